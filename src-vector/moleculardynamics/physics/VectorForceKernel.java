@@ -0,0 +1,163 @@
+package moleculardynamics.physics;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import moleculardynamics.SimulationConfig;
+
+
+/**
+ * Vector force kernel
+ * Runs the Lennard-Jones pair loops of the worker pool on the Vector API.
+ * The separations from a particle to its neighbour list are packed into
+ * contiguous per-thread arrays, the forces are computed a full register of
+ * pairs at a time with the pairs beyond the cutoff masked to zero instead
+ * of branched over, and the reactions on the particles of the chunk are
+ * unpacked by index. Packing avoids the gather and scatter intrinsics,
+ * which are slow or unreliable on the incubator releases. The cell list, the split pair groups of the multiple
+ * time step integrator and the observed steps, which also sum the energies
+ * and the distances, use the scalar loops.
+ * Lives in the src-vector sources, compiled against the main classes with
+ * --add-modules jdk.incubator.vector, which it also needs to run. Only
+ * created by name through ForceKernel.create
+ */
+public class VectorForceKernel extends ForceKernel
+{
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final DoubleVector ONE = DoubleVector.broadcast(SPECIES, 1.0);
+
+    private final double sigmaSquared;
+    private final double epsilon24;
+    private final double cutoffSquared;
+    /* Packed neighbours of one particle, per worker thread */
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue ()
+        {
+            return new Scratch();
+        }
+    };
+
+
+    /**
+     * Create a kernel for a configuration with the Lennard-Jones potential
+     * @param config The simulation configuration
+     */
+    public VectorForceKernel (SimulationConfig config)
+    {
+        super(config);
+        this.sigmaSquared = config.getParticleRadius() * config.getParticleRadius();
+        this.epsilon24 = 24 * config.getEpsilon();
+        this.cutoffSquared = config.getForceCutoff() * config.getForceCutoff();
+    }
+
+    @Override
+    public void accumulatePairs (int from, int to, double[] x, double[] y,
+        CellList cellList, NeighborList neighborList, double[] fx, double[] fy, PairSums sums, int group)
+    {
+        if (sums != null || neighborList == null || group != ALL_PAIRS)
+        {
+            super.accumulatePairs(from, to, x, y, cellList, neighborList, fx, fy, sums, group);
+            return;
+        }
+
+        Scratch packed = scratch.get();
+        int[] neighbors = neighborList.getNeighbors();
+        for (int i = from; i < to; i++)
+        {
+            int start = neighborList.getStart(i);
+            int count = neighborList.getEnd(i) - start;
+            packed.reserve(count);
+            final double[] dxs = packed.dx, dys = packed.dy;
+            final double px = x[i];
+            final double py = y[i];
+            for (int k = 0; k < count; k++)
+            {
+                int j = neighbors[start + k];
+                dxs[k] = px - x[j];
+                dys[k] = py - y[j];
+            }
+
+            /* Forces in place of the separations, and their sum on i */
+            DoubleVector fxi = DoubleVector.zero(SPECIES);
+            DoubleVector fyi = DoubleVector.zero(SPECIES);
+            int k = 0;
+            for (int bound = SPECIES.loopBound(count); k < bound; k += SPECIES.length())
+            {
+                DoubleVector dx = DoubleVector.fromArray(SPECIES, dxs, k);
+                DoubleVector dy = DoubleVector.fromArray(SPECIES, dys, k);
+                DoubleVector distanceSquared = dx.mul(dx).add(dy.mul(dy));
+                VectorMask<Double> outside = distanceSquared.compare(VectorOperators.GE, cutoffSquared);
+
+                /* F / distance = 24 * epsilon * [2 * attract^2 - attract] / distance^2, zero beyond the cutoff */
+                DoubleVector inverse = ONE.div(distanceSquared).blend(0.0, outside);
+                DoubleVector attract = inverse.mul(sigmaSquared);
+                attract = attract.mul(attract).mul(attract);
+                DoubleVector f = attract.mul(2.0).sub(1.0).mul(attract).mul(inverse).mul(epsilon24);
+                DoubleVector forceX = f.mul(dx);
+                DoubleVector forceY = f.mul(dy);
+                fxi = fxi.add(forceX);
+                fyi = fyi.add(forceY);
+                forceX.intoArray(dxs, k);
+                forceY.intoArray(dys, k);
+            }
+            double fxs = fxi.reduceLanes(VectorOperators.ADD);
+            double fys = fyi.reduceLanes(VectorOperators.ADD);
+            for (; k < count; k++)
+            {
+                double dx = dxs[k];
+                double dy = dys[k];
+                double distanceSquared = dx * dx + dy * dy;
+                double f = 0;
+                if (distanceSquared < cutoffSquared)
+                {
+                    double inverse = 1 / distanceSquared;
+                    double attract = sigmaSquared * inverse;
+                    attract = attract * attract * attract;
+                    f = epsilon24 * (2 * attract - 1) * attract * inverse;
+                }
+                dxs[k] = f * dx;
+                dys[k] = f * dy;
+                fxs += dxs[k];
+                fys += dys[k];
+            }
+
+            /* The reactions on the higher neighbours of the chunk, the others apply their own */
+            for (k = 0; k < count; k++)
+            {
+                int j = neighbors[start + k];
+                if (j > i && j < to)
+                {
+                    fx[j] -= dxs[k];
+                    fy[j] -= dys[k];
+                }
+            }
+            fx[i] += fxs;
+            fy[i] += fys;
+        }
+    }
+
+    @Override
+    public int getLanes ()
+    {
+        return SPECIES.length();
+    }
+
+    /* Separations from one particle to its neighbours, reused by one thread */
+    private static class Scratch
+    {
+        double[] dx = new double[64];
+        double[] dy = new double[64];
+
+        void reserve (int count)
+        {
+            if (count > dx.length)
+            {
+                dx = new double[Math.max(count, 2 * dx.length)];
+                dy = new double[dx.length];
+            }
+        }
+    }
+}
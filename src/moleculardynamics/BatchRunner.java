@@ -0,0 +1,266 @@
+package moleculardynamics;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import moleculardynamics.io.Checkpoint;
+import moleculardynamics.io.Checkpointer;
+import moleculardynamics.io.SnapshotPipeline;
+import moleculardynamics.io.TrajectoryWriter;
+import moleculardynamics.physics.Observables;
+import moleculardynamics.physics.RadialDistribution;
+import moleculardynamics.physics.UnitCell;
+
+
+/**
+ * Headless batch runner
+ * Integrates a unit cell on the worker pool engine up to the final time or a
+ * number of steps, without any display, and prints the throughput. Any
+ * SimulationConfig key can be given as an option, -n and -box are short for
+ * -particleCount and -boxWidth. With -trajectory, one frame every stride
+ * steps is written to a binary trajectory file by a snapshot pipeline of
+ * the given number of slots, block, drop_oldest or sample when it falls behind:
+ *
+ *   java moleculardynamics.BatchRunner [-config file] [-n particles]
+ *        [-threads count] [-steps count | -tf time] [-box width]
+ *        [-trajectory file] [-stride steps] [-slots 4] [-policy block]
+ *        [-checkpoint file] [-checkpointSteps count] [-checkpointSeconds time]
+ *        [-restart file] [-observe steps]
+ *        [-rdf file] [-rdfBin 0.05] [-rdfStride steps] [-key value]
+ *
+ * With -checkpoint, the state is saved at the given intervals and at the
+ * end. With -restart, the run continues from a checkpoint, whose
+ * configuration replaces the configuration options, up to the final time
+ * or for the given number of steps. With -observe, the energies, the
+ * temperature and the pressure are evaluated every given number of steps
+ * and their means and standard deviations printed. With -rdf, g(r) is
+ * sampled every given number of steps and written normalized at the end.
+ * With an adaptive time step and no -steps, the run stops on the first
+ * step that reaches the final time. With -neighborSkin greater than 0, a
+ * Verlet neighbour list of that skin replaces the cell list and its
+ * rebuilds are printed. Only then can -kernel vector or auto run the pair
+ * loops on the Vector API, the printed kernel is the one that ran
+ */
+public class BatchRunner
+{
+    /* Steps run per call to the engine between two progress checks */
+    private static final int BATCH = 100;
+
+
+    /**
+     * Main function. Runs the simulation and prints the throughput
+     */
+    public static void main (String[] args) throws IOException
+    {
+        System.setProperty("java.awt.headless", "true");
+
+        long steps = -1;
+        String trajectoryFile = null;
+        int stride = 1;
+        int slots = 4;
+        SnapshotPipeline.Policy policy = SnapshotPipeline.Policy.BLOCK;
+        String checkpointFile = null;
+        String restartFile = null;
+        long checkpointSteps = 0;
+        double checkpointSeconds = 0;
+        int observeEvery = 0;
+        String rdfFile = null;
+        double rdfBin = 0.05;
+        int rdfStride = 10;
+        List<String> options = new ArrayList<String>();
+        for (int a = 0; a + 1 < args.length; a += 2)
+        {
+            String value = args[a + 1];
+            switch (args[a])
+            {
+                case "-steps":
+                    steps = Long.parseLong(value);
+                    continue;
+                case "-trajectory":
+                    trajectoryFile = value;
+                    continue;
+                case "-stride":
+                    stride = Integer.parseInt(value);
+                    continue;
+                case "-slots":
+                    slots = Integer.parseInt(value);
+                    continue;
+                case "-policy":
+                    policy = SnapshotPipeline.Policy.valueOf(value.toUpperCase());
+                    continue;
+                case "-checkpoint":
+                    checkpointFile = value;
+                    continue;
+                case "-checkpointSteps":
+                    checkpointSteps = Long.parseLong(value);
+                    continue;
+                case "-checkpointSeconds":
+                    checkpointSeconds = Double.parseDouble(value);
+                    continue;
+                case "-restart":
+                    restartFile = value;
+                    continue;
+                case "-observe":
+                    observeEvery = Integer.parseInt(value);
+                    continue;
+                case "-rdf":
+                    rdfFile = value;
+                    continue;
+                case "-rdfBin":
+                    rdfBin = Double.parseDouble(value);
+                    continue;
+                case "-rdfStride":
+                    rdfStride = Integer.parseInt(value);
+                    continue;
+                case "-n":
+                    options.add("-" + SimulationConfig.PARTICLE_COUNT);
+                    break;
+                case "-box":
+                    options.add("-" + SimulationConfig.BOX_WIDTH);
+                    break;
+                default:
+                    options.add(args[a]);
+            }
+            options.add(value);
+        }
+        if (args.length % 2 != 0)
+        {
+            /* Rejected by fromArgs, as an option without a value */
+            options.add(args[args.length - 1]);
+        }
+
+        SimulationConfig config;
+        try
+        {
+            config = SimulationConfig.fromArgs(options.toArray(new String[options.size()]));
+        }
+        catch (IllegalArgumentException e)
+        {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        UnitCell uc;
+        if (restartFile != null)
+        {
+            uc = Checkpoint.read(Paths.get(restartFile));
+            config = uc.getConfig();
+        }
+        else
+        {
+            try
+            {
+                uc = new UnitCell(config);
+            }
+            catch (IllegalArgumentException e)
+            {
+                /* The particles do not fit the box at the minimum separation */
+                System.err.println(e.getMessage());
+                System.exit(2);
+                return;
+            }
+            uc.useWorkerPool(config.getThreadCount());
+        }
+        boolean untilTime = steps < 0 && config.isAdaptiveDt();
+        if (steps < 0 && !untilTime)
+        {
+            steps = Math.max(0, Math.round((config.getTf() - uc.getElapsedTime()) / config.getDt()));
+        }
+        int n = config.getParticleCount();
+        int threads = config.getThreadCount();
+        long firstStep = uc.getStepCount();
+        Observables observables = observeEvery > 0 ? uc.enableObservables(observeEvery) : null;
+        RadialDistribution radialDistribution = rdfFile != null ? uc.enableRadialDistribution(rdfBin, rdfStride) : null;
+
+        Checkpointer checkpointer = null;
+        if (checkpointFile != null)
+        {
+            checkpointer = new Checkpointer(Paths.get(checkpointFile), checkpointSteps, checkpointSeconds, uc);
+        }
+        TrajectoryWriter trajectory = null;
+        SnapshotPipeline snapshots = null;
+        if (trajectoryFile != null)
+        {
+            trajectory = new TrajectoryWriter(Paths.get(trajectoryFile), n, config.getBoxWidth(), config.getDt(),
+                config.isAdaptiveDt(), stride);
+            snapshots = new SnapshotPipeline(n, slots, stride, policy, trajectory);
+            uc.setSnapshotPipeline(snapshots);
+        }
+
+        long start = System.nanoTime();
+        for (long done = 0; untilTime ? uc.getElapsedTime() < config.getTf() : done < steps; )
+        {
+            /* Adaptive steps are at most dtMax long, so a batch never goes much past the final time */
+            long batch = untilTime
+                ? Math.max(1, Math.min(BATCH, (long) ((config.getTf() - uc.getElapsedTime()) / config.getDtMax())))
+                : Math.min(BATCH, steps - done);
+            if (checkpointer != null)
+            {
+                batch = Math.min(batch, checkpointer.stepsUntilDue(uc.getStepCount()));
+                uc.step((int) batch);
+                checkpointer.update(uc);
+            }
+            else
+            {
+                uc.step((int) batch);
+            }
+            done += batch;
+        }
+        if (checkpointer != null)
+        {
+            checkpointer.write(uc);
+        }
+        double wallTime = (System.nanoTime() - start) / 1e9;
+        long stepsRun = uc.getStepCount() - firstStep;
+        uc.getEngine().shutdown();
+        if (trajectory != null)
+        {
+            snapshots.close();
+            trajectory.close();
+        }
+
+        System.out.println(String.format("particles\t%d", n));
+        System.out.println(String.format("threads\t%d", threads));
+        System.out.println(String.format("kernel\t%s", uc.getForceKernel().getName()));
+        System.out.println(String.format("steps\t%d", stepsRun));
+        System.out.println(String.format("simulated time\t%.4f", uc.getElapsedTime()));
+        if (uc.getEngine().getStepController() != null)
+        {
+            System.out.println(String.format("mean dt\t%.4g", uc.getEngine().getStepController().getMeanStep()));
+        }
+        if (uc.getNeighborList() != null)
+        {
+            System.out.println(String.format("neighbour rebuilds\t%d", uc.getNeighborList().getRebuilds()));
+            System.out.println(String.format("steps/rebuild\t%.2f", uc.getNeighborList().getStepsPerRebuild()));
+        }
+        System.out.println(String.format("wall time (s)\t%.3f", wallTime));
+        System.out.println(String.format("steps/s\t%.2f", stepsRun / wallTime));
+        System.out.println(String.format("particle-steps/s\t%.4g", stepsRun * (double) n / wallTime));
+        if (trajectory != null)
+        {
+            System.out.println(String.format("frames\t%d", trajectory.getFrameCount()));
+            System.out.println(String.format("dropped frames\t%d", snapshots.getDropped()));
+            System.out.println(String.format("trajectory MB\t%.1f", trajectory.getBytesWritten() / 1e6));
+        }
+        if (observables != null)
+        {
+            for (Observables.Quantity quantity : Observables.Quantity.values())
+            {
+                System.out.println(String.format("%s\t%.6g\t%.3g", quantity.name().toLowerCase(),
+                    observables.getMean(quantity), Math.sqrt(observables.getVariance(quantity))));
+            }
+        }
+        if (radialDistribution != null)
+        {
+            radialDistribution.write(Paths.get(rdfFile));
+            System.out.println(String.format("g(r) samples\t%d", radialDistribution.getSamples()));
+        }
+        if (checkpointer != null)
+        {
+            System.out.println(String.format("checkpoints\t%d", checkpointer.getWritten()));
+            System.out.println(String.format("checkpoint time (s)\t%.3f", checkpointer.getLastSeconds()));
+        }
+    }
+}
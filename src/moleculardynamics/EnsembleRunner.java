@@ -0,0 +1,350 @@
+package moleculardynamics;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import moleculardynamics.physics.ParticleStore;
+import moleculardynamics.physics.UnitCell;
+
+
+/**
+ * Ensemble runner
+ * Runs many independent unit cells, differing in seed or in any configuration
+ * key, on one shared work-stealing pool. The runs are sorted by estimated cost
+ * and the most expensive start first, so that the small ones fill the gaps at
+ * the end. A run costing more than the share of one worker is split into
+ * chunks that the idle workers can steal. The results are written to one
+ * summary file, one line per run in input order:
+ *
+ *   java moleculardynamics.EnsembleRunner [-config file] [-threads count]
+ *        [-steps count] [-seeds count] [-vary key=v1,v2,...]... [-runs file]
+ *        [-out ensemble.tsv] [-key value]
+ *
+ * Each line of a runs file holds the "key=value" overrides of one run, and
+ * -seeds and -vary build the cartesian product of their values. With
+ * -neighborSkin greater than 0, the runs use a Verlet neighbour list and
+ * the summary holds its rebuilds
+ */
+public class EnsembleRunner
+{
+    /* Steps run per call to the engine */
+    private static final int BATCH = 100;
+
+    private SimulationConfig base;
+    private long steps = -1;
+    private int seeds = 0;
+    private String runsFile;
+    private String out = "ensemble.tsv";
+    private final List<String[]> variations = new ArrayList<String[]>();
+
+
+    /**
+     * Main function. Runs the ensemble and writes the summary
+     */
+    public static void main (String[] args) throws IOException
+    {
+        System.setProperty("java.awt.headless", "true");
+        EnsembleRunner runner = new EnsembleRunner();
+        runner.parse(args);
+        runner.run(runner.runs());
+    }
+
+    private void parse (String[] args) throws IOException
+    {
+        List<String> options = new ArrayList<String>();
+        for (int a = 0; a + 1 < args.length; a += 2)
+        {
+            String value = args[a + 1];
+            switch (args[a])
+            {
+                case "-steps":
+                    steps = Long.parseLong(value);
+                    break;
+                case "-seeds":
+                    seeds = Integer.parseInt(value);
+                    break;
+                case "-vary":
+                    int equals = value.indexOf('=');
+                    if (equals < 0)
+                    {
+                        throw new IllegalArgumentException("Expected key=v1,v2,... instead of " + value);
+                    }
+                    String[] variation = (value.substring(0, equals) + "," + value.substring(equals + 1)).split(",");
+                    variations.add(variation);
+                    break;
+                case "-runs":
+                    runsFile = value;
+                    break;
+                case "-out":
+                    out = value;
+                    break;
+                default:
+                    options.add(args[a]);
+                    options.add(value);
+            }
+        }
+        if (args.length % 2 != 0)
+        {
+            /* Rejected by fromArgs, as an option without a value */
+            options.add(args[args.length - 1]);
+        }
+        base = SimulationConfig.fromArgs(options.toArray(new String[options.size()]));
+    }
+
+    /*
+     * The overrides of every run: the lines of the runs file, or the
+     * cartesian product of the seeds and the varied values
+     */
+    private List<Properties> runs () throws IOException
+    {
+        List<Properties> runs = new ArrayList<Properties>();
+        if (runsFile != null)
+        {
+            try (BufferedReader reader = Files.newBufferedReader(Paths.get(runsFile), StandardCharsets.UTF_8))
+            {
+                String line;
+                while ((line = reader.readLine()) != null)
+                {
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#"))
+                    {
+                        continue;
+                    }
+                    Properties run = new Properties();
+                    for (String entry : line.split("\\s+"))
+                    {
+                        int equals = entry.indexOf('=');
+                        if (equals < 0)
+                        {
+                            throw new IllegalArgumentException("Expected key=value instead of " + entry);
+                        }
+                        run.setProperty(entry.substring(0, equals), entry.substring(equals + 1));
+                    }
+                    runs.add(run);
+                }
+            }
+            return runs;
+        }
+
+        runs.add(new Properties());
+        if (seeds > 0)
+        {
+            variations.add(0, seedVariation());
+        }
+        for (String[] variation : variations)
+        {
+            List<Properties> product = new ArrayList<Properties>();
+            for (Properties run : runs)
+            {
+                for (int v = 1; v < variation.length; v++)
+                {
+                    Properties next = new Properties();
+                    next.putAll(run);
+                    next.setProperty(variation[0], variation[v]);
+                    product.add(next);
+                }
+            }
+            runs = product;
+        }
+        return runs;
+    }
+
+    private String[] seedVariation ()
+    {
+        String[] variation = new String[seeds + 1];
+        variation[0] = SimulationConfig.SEED;
+        for (int s = 0; s < seeds; s++)
+        {
+            variation[s + 1] = "" + s;
+        }
+        return variation;
+    }
+
+    private void run (List<Properties> overrides) throws IOException
+    {
+        int threads = base.getThreadCount();
+        List<Run> runs = new ArrayList<Run>(overrides.size());
+        double totalCost = 0;
+        for (int r = 0; r < overrides.size(); r++)
+        {
+            SimulationConfig config = configure(r, overrides.get(r));
+            long runSteps = steps >= 0 ? steps : Math.round(config.getTf() / config.getDt());
+            Run run = new Run(r, overrides.get(r), config, runSteps);
+            runs.add(run);
+            totalCost += run.cost;
+        }
+
+        /* Runs larger than the share of one worker are split so that the others can help */
+        double share = totalCost / threads;
+        for (Run run : runs)
+        {
+            run.chunks = (int) Math.max(1, Math.min(threads, Math.ceil(run.cost / share)));
+        }
+
+        final List<Run> scheduled = new ArrayList<Run>(runs);
+        Collections.sort(scheduled, new Comparator<Run>() {
+            public int compare (Run a, Run b)
+            {
+                return Double.compare(b.cost, a.cost);
+            }
+        });
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute ()
+            {
+                /* Forked in order, so that idle workers steal the most expensive runs first */
+                ForkJoinTask.invokeAll(scheduled);
+            }
+        });
+        double wallTime = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+
+        double busyTime = 0;
+        double particleSteps = 0;
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(out), StandardCharsets.UTF_8)))
+        {
+            writer.println("run\toverrides\tparticles\tchunks\tsteps\twall (s)\tkinetic energy\tmean height"
+                + "\trebuilds\tsteps/rebuild");
+            for (Run run : runs)
+            {
+                writer.println(String.format("%d\t%s\t%d\t%d\t%d\t%.4f\t%.6g\t%.6g\t%s", run.id, run.describe(),
+                    run.config.getParticleCount(), run.chunks, run.steps, run.wallTime, run.kineticEnergy,
+                    run.meanHeight, run.rebuilds));
+                busyTime += run.wallTime;
+                particleSteps += run.steps * (double) run.config.getParticleCount();
+            }
+        }
+
+        System.out.println(String.format("runs\t%d", runs.size()));
+        System.out.println(String.format("threads\t%d", threads));
+        System.out.println(String.format("wall time (s)\t%.3f", wallTime));
+        System.out.println(String.format("run time (s)\t%.3f", busyTime));
+        System.out.println(String.format("efficiency\t%.2f", busyTime / (wallTime * threads)));
+        System.out.println(String.format("particle-steps/s\t%.4g", particleSteps / wallTime));
+        System.out.println(String.format("summary\t%s", out));
+    }
+
+    /*
+     * The configuration of one run, a failure names the run and the override
+     * it comes from, or every override when none fails on its own
+     */
+    private SimulationConfig configure (int id, Properties overrides)
+    {
+        try
+        {
+            return base.with(overrides);
+        }
+        catch (IllegalArgumentException e)
+        {
+            String culprit = Run.describe(overrides);
+            for (String key : overrides.stringPropertyNames())
+            {
+                try
+                {
+                    base.with(key, overrides.getProperty(key));
+                }
+                catch (IllegalArgumentException alone)
+                {
+                    culprit = key + "=" + overrides.getProperty(key);
+                    break;
+                }
+            }
+            throw new IllegalArgumentException("Invalid run " + id + ", " + culprit + ": " + e.getMessage(), e);
+        }
+    }
+
+    /* One member of the ensemble, built and integrated on the worker that runs it */
+    @SuppressWarnings("serial")
+    private static class Run extends RecursiveAction
+    {
+        final int id;
+        final Properties overrides;
+        final SimulationConfig config;
+        final long steps;
+        final double cost;
+        int chunks = 1;
+
+        double wallTime;
+        double kineticEnergy;
+        double meanHeight;
+        /* Neighbour list rebuilds and steps per rebuild, dashes with the cell list */
+        String rebuilds = "-\t-";
+
+        Run (int id, Properties overrides, SimulationConfig config, long steps)
+        {
+            this.id = id;
+            this.overrides = overrides;
+            this.config = config;
+            this.steps = steps;
+
+            /* Particle steps times the expected number of neighbours within the cutoff */
+            double n = config.getParticleCount();
+            double boxWidth = config.getBoxWidth();
+            double cutoff = config.getForceCutoff();
+            this.cost = n * steps * (1 + Math.PI * cutoff * cutoff * n / (boxWidth * boxWidth));
+        }
+
+        @Override
+        protected void compute ()
+        {
+            long start = System.nanoTime();
+            UnitCell uc = new UnitCell(config);
+            uc.useWorkerPool(getPool(), chunks);
+            for (long done = 0; done < steps; done += BATCH)
+            {
+                uc.step((int) Math.min(BATCH, steps - done));
+            }
+            wallTime = (System.nanoTime() - start) / 1e9;
+            if (uc.getNeighborList() != null)
+            {
+                rebuilds = String.format("%d\t%.2f", uc.getNeighborList().getRebuilds(),
+                    uc.getNeighborList().getStepsPerRebuild());
+            }
+
+            /* Total kinetic energy of unit masses, as the engine integrates them and Observables sums them */
+            ParticleStore store = uc.getStore();
+            for (int i = 0; i < store.size(); i++)
+            {
+                double vx = store.getVx()[i], vy = store.getVy()[i];
+                kineticEnergy += 0.5 * (vx * vx + vy * vy);
+                meanHeight += store.getY()[i];
+            }
+            if (store.size() > 0)
+            {
+                meanHeight /= store.size();
+            }
+        }
+
+        String describe ()
+        {
+            return describe(overrides);
+        }
+
+        static String describe (Properties overrides)
+        {
+            List<String> keys = new ArrayList<String>(overrides.stringPropertyNames());
+            Collections.sort(keys);
+            StringBuilder result = new StringBuilder();
+            for (String key : keys)
+            {
+                result.append(result.length() == 0 ? "" : ";").append(key).append('=').append(overrides.getProperty(key));
+            }
+            return result.length() == 0 ? "-" : result.toString();
+        }
+    }
+}
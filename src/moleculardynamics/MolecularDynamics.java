@@ -3,6 +3,7 @@ package moleculardynamics;
 import java.applet.Applet;
 import java.awt.BorderLayout;
 
+import moleculardynamics.physics.SimulationController;
 import moleculardynamics.physics.UnitCell;
 import moleculardynamics.ui.InterfaceGraphique;
 
@@ -20,16 +21,15 @@ public class MolecularDynamics extends Applet
     {
         setSize(800, 600);
         /* Create and start the simulation */
-        UnitCell uc = new UnitCell(Parameters.PARTICLE_COUNT);
-        Thread t = new Thread(uc, "UC#");
+        UnitCell uc = new UnitCell(new SimulationConfig());
+        SimulationController controller = new SimulationController(uc);
         
         InterfaceGraphique iG = new InterfaceGraphique(uc);
-        uc.addUnitCellListener(iG);
         setLayout(new BorderLayout());
         add(iG, BorderLayout.CENTER);
-        uc.start();
-        t.start();
-        //while(uc.getElapsedTime() < Parameters.TF)
+        controller.start();
+        controller.run();
+        //while(uc.getElapsedTime() < uc.getConfig().getTf())
       
     }
 }
\ No newline at end of file
@@ -36,4 +36,65 @@ public class Parameters
     
     /* Minimal distance for computing interactions between two particles */
     public static final double FORCECUTOFF = 3.0;
+
+    /* Distance added to the cutoff by the Verlet neighbour list, 0 to bin the particles in the cell list each step */
+    public static final double NEIGHBOR_SKIN = 0;
+
+    /* Worker threads of the pool engine */
+    public static final int THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+
+    /* Seed of the initial placement, negative for a different placement each run */
+    public static final long SEED = -1;
+
+    /* Pair potential: lj, wca, morse or soft */
+    public static final String POTENTIAL = "lj";
+
+    /* Interpolated table of the pair potential: none, linear or cubic */
+    public static final String TABLE = "none";
+
+    /* Points of the interpolated table */
+    public static final int TABLE_POINTS = 4096;
+
+    /* Pair loops: scalar, vector, or auto for vector only where it was measured faster */
+    public static final String KERNEL = "scalar";
+
+    /* Smallest cutoff, in particle radii, at which auto picks the vector loops: about 1.3x there, 1.05x at 3 */
+    public static final double VECTOR_CUTOFF = 4.5;
+
+    /* Inner steps per step of the multiple time step integrator, 1 for plain velocity Verlet */
+    public static final int RESPA_STEPS = 1;
+
+    /* Distance beyond which the pair forces are only evaluated on the outer steps */
+    public static final double RESPA_SPLIT = 2.0;
+
+    /* Width of the switch between the inner and the outer pair forces */
+    public static final double RESPA_HEALING = 0.5;
+
+    /* Forces evaluated on the outer steps besides the far pairs: walls, gravity, or none */
+    public static final String RESPA_OUTER = "gravity";
+
+    /* Whether each step picks its own DT, between DT_MIN and DT_MAX */
+    public static final boolean ADAPTIVE_DT = false;
+
+    /* Bounds of the adaptive time step */
+    public static final double DT_MIN = 1e-5;
+    public static final double DT_MAX = 0.02;
+
+    /* Largest distance a particle may move in one adaptive step */
+    public static final double STEP_DISPLACEMENT = 0.01;
+
+    /* Threads of the thread per particle mode: platform, or virtual where the runtime has them */
+    public static final String PARTICLE_THREADS = "platform";
+
+    /* Largest number of particles meeting on one phaser of the step barrier */
+    public static final int BARRIER_WIDTH = 32;
+
+    /* Initial placement: square, hex, jittered, poisson, or random without minimum separation */
+    public static final String PLACEMENT = "jittered";
+
+    /* Smallest initial distance between two particles */
+    public static final double MIN_SEPARATION = 0.9;
+
+    /* Largest move of a coordinate of the jittered placement, in lattice spacings */
+    public static final double PLACEMENT_JITTER = 0.2;
 }
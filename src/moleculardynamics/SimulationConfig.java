@@ -0,0 +1,560 @@
+package moleculardynamics;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * Simulation configuration
+ * Immutable set of simulation parameters, read at run time from a properties
+ * file, a flat JSON object or the command line. Missing values default to the
+ * Parameters constants, so one JVM can run many configurations in a row
+ */
+public final class SimulationConfig
+{
+    public static final String PARTICLE_COUNT = "particleCount";
+    public static final String BOX_WIDTH = "boxWidth";
+    public static final String WALL_STIFFNESS = "wallStiffness";
+    public static final String GRAVITY = "gravity";
+    public static final String DT = "dt";
+    public static final String TF = "tf";
+    public static final String PARTICLE_WEIGHT = "particleWeight";
+    public static final String PARTICLE_RADIUS = "particleRadius";
+    public static final String EPSILON = "epsilon";
+    public static final String FORCECUTOFF = "forceCutoff";
+    public static final String NEIGHBOR_SKIN = "neighborSkin";
+    public static final String THREAD_COUNT = "threads";
+    public static final String SEED = "seed";
+    public static final String POTENTIAL = "potential";
+    public static final String TABLE = "table";
+    public static final String KERNEL = "kernel";
+    public static final String RESPA_STEPS = "respaSteps";
+    public static final String RESPA_SPLIT = "respaSplit";
+    public static final String RESPA_HEALING = "respaHealing";
+    public static final String RESPA_OUTER = "respaOuter";
+    public static final String ADAPTIVE_DT = "adaptiveDt";
+    public static final String DT_MIN = "dtMin";
+    public static final String DT_MAX = "dtMax";
+    public static final String STEP_DISPLACEMENT = "stepDisplacement";
+    public static final String PARTICLE_THREADS = "particleThreads";
+    public static final String PLACEMENT = "placement";
+    public static final String MIN_SEPARATION = "minSeparation";
+
+    private static final List<String> KEYS = Arrays.asList(PARTICLE_COUNT, BOX_WIDTH, WALL_STIFFNESS, GRAVITY,
+        DT, TF, PARTICLE_WEIGHT, PARTICLE_RADIUS, EPSILON, FORCECUTOFF, NEIGHBOR_SKIN, THREAD_COUNT, SEED,
+        POTENTIAL, TABLE, KERNEL, RESPA_STEPS, RESPA_SPLIT, RESPA_HEALING, RESPA_OUTER,
+        ADAPTIVE_DT, DT_MIN, DT_MAX, STEP_DISPLACEMENT, PARTICLE_THREADS,
+        PLACEMENT, MIN_SEPARATION);
+    private static final List<String> POTENTIALS = Arrays.asList("lj", "wca", "morse", "soft");
+    private static final List<String> TABLES = Arrays.asList("none", "linear", "cubic");
+    private static final List<String> KERNELS = Arrays.asList("scalar", "vector", "auto");
+    private static final List<String> THREAD_KINDS = Arrays.asList("platform", "virtual");
+    private static final List<String> PLACEMENTS = Arrays.asList("square", "hex", "jittered", "poisson", "random");
+    private static final List<String> OUTER_FORCES = Arrays.asList("walls", "gravity", "none");
+
+    /* One entry of a flat JSON object: a string up to its closing quote, or a bare number or literal */
+    private static final Pattern JSON_ENTRY = Pattern.compile(
+        "\\s*\"(\\w+)\"\\s*:\\s*(?:\"((?:[^\"\\\\]|\\\\.)*)\"|([-+.\\w]+))\\s*");
+    private static final Pattern JSON_ESCAPE = Pattern.compile("\\\\(?:u([0-9a-fA-F]{4})|(.))");
+
+    private final int particleCount;
+    private final double boxWidth;
+    private final double wallStiffness;
+    private final double gravity;
+    private final double dt;
+    private final double tf;
+    private final double particleWeight;
+    private final double particleRadius;
+    private final double epsilon;
+    private final double forceCutoff;
+    private final double neighborSkin;
+    private final int threadCount;
+    private final long seed;
+    private final String potential;
+    private final String table;
+    private final String kernel;
+    private final int respaSteps;
+    private final double respaSplit;
+    private final double respaHealing;
+    private final List<String> respaOuter;
+    private final boolean adaptiveDt;
+    private final double dtMin;
+    private final double dtMax;
+    private final double stepDisplacement;
+    private final String particleThreads;
+    private final String placement;
+    private final double minSeparation;
+
+
+    /**
+     * Create a configuration holding the Parameters defaults
+     */
+    public SimulationConfig ()
+    {
+        this(new Properties());
+    }
+
+    /**
+     * Create a configuration from properties, missing keys take the Parameters defaults
+     * @param properties The properties, keyed by the constants of this class
+     * @throws IllegalArgumentException If a key is unknown or a value is invalid
+     */
+    public SimulationConfig (Properties properties)
+    {
+        for (String key : properties.stringPropertyNames())
+        {
+            if (!KEYS.contains(key))
+            {
+                throw new IllegalArgumentException("Unknown parameter " + key);
+            }
+        }
+        this.particleCount = Integer.parseInt(properties.getProperty(PARTICLE_COUNT, "" + Parameters.PARTICLE_COUNT).trim());
+        this.boxWidth = read(properties, BOX_WIDTH, Parameters.BOX_WIDTH);
+        this.wallStiffness = read(properties, WALL_STIFFNESS, Parameters.WALL_STIFFNESS);
+        this.gravity = read(properties, GRAVITY, Parameters.GRAVITY);
+        this.dt = read(properties, DT, Parameters.DT);
+        this.tf = read(properties, TF, Parameters.TF);
+        this.particleWeight = read(properties, PARTICLE_WEIGHT, Parameters.PARTICLE_WEIGHT);
+        this.particleRadius = read(properties, PARTICLE_RADIUS, Parameters.PARTICLE_RADIUS);
+        this.epsilon = read(properties, EPSILON, Parameters.EPSILON);
+        this.forceCutoff = read(properties, FORCECUTOFF, Parameters.FORCECUTOFF);
+        this.neighborSkin = read(properties, NEIGHBOR_SKIN, Parameters.NEIGHBOR_SKIN);
+        this.threadCount = Integer.parseInt(properties.getProperty(THREAD_COUNT, "" + Parameters.THREAD_COUNT).trim());
+        this.seed = Long.parseLong(properties.getProperty(SEED, "" + Parameters.SEED).trim());
+        this.potential = properties.getProperty(POTENTIAL, Parameters.POTENTIAL).trim().toLowerCase();
+        this.table = properties.getProperty(TABLE, Parameters.TABLE).trim().toLowerCase();
+        this.kernel = properties.getProperty(KERNEL, Parameters.KERNEL).trim().toLowerCase();
+        this.respaSteps = Integer.parseInt(properties.getProperty(RESPA_STEPS, "" + Parameters.RESPA_STEPS).trim());
+        this.respaSplit = read(properties, RESPA_SPLIT, Parameters.RESPA_SPLIT);
+        this.respaHealing = read(properties, RESPA_HEALING, Parameters.RESPA_HEALING);
+        this.respaOuter = Arrays.asList(properties.getProperty(RESPA_OUTER, Parameters.RESPA_OUTER).trim()
+            .toLowerCase().split("\\s*,\\s*"));
+        this.adaptiveDt = readFlag(properties, ADAPTIVE_DT, Parameters.ADAPTIVE_DT);
+        this.dtMin = read(properties, DT_MIN, Parameters.DT_MIN);
+        this.dtMax = read(properties, DT_MAX, Parameters.DT_MAX);
+        this.stepDisplacement = read(properties, STEP_DISPLACEMENT, Parameters.STEP_DISPLACEMENT);
+        this.particleThreads = properties.getProperty(PARTICLE_THREADS, Parameters.PARTICLE_THREADS).trim().toLowerCase();
+        this.placement = properties.getProperty(PLACEMENT, Parameters.PLACEMENT).trim().toLowerCase();
+        this.minSeparation = read(properties, MIN_SEPARATION, Parameters.MIN_SEPARATION);
+
+        if (particleCount < 0 || boxWidth <= 0 || dt <= 0 || forceCutoff <= 0 || neighborSkin < 0 || threadCount <= 0
+            || !POTENTIALS.contains(potential) || !TABLES.contains(table)
+            || !KERNELS.contains(kernel) || !THREAD_KINDS.contains(particleThreads)
+            || !PLACEMENTS.contains(placement) || minSeparation < 0 || respaSteps <= 0 || !OUTER_FORCES.containsAll(respaOuter)
+            || respaSteps > 1 && (respaHealing <= 0 || respaHealing >= respaSplit || respaSplit > forceCutoff)
+            || adaptiveDt && (dtMin <= 0 || dtMax < dtMin || stepDisplacement <= 0))
+        {
+            throw new IllegalArgumentException("Invalid configuration " + this);
+        }
+    }
+
+    /**
+     * Load a configuration from a .json file holding a flat object, or from
+     * a properties file
+     * @param path The file path
+     * @return The configuration
+     * @throws IOException If the file cannot be read
+     */
+    public static SimulationConfig load (String path) throws IOException
+    {
+        Properties properties = new Properties();
+        if (path.endsWith(".json"))
+        {
+            String json = new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+            readJson(json, path, properties);
+        }
+        else
+        {
+            try (Reader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8))
+            {
+                properties.load(reader);
+            }
+        }
+        return new SimulationConfig(properties);
+    }
+
+    /*
+     * Read the entries of a flat JSON object, rejecting anything else
+     */
+    private static void readJson (String json, String path, Properties properties)
+    {
+        String body = json.trim();
+        if (!body.startsWith("{") || !body.endsWith("}"))
+        {
+            throw new IllegalArgumentException("Expected a JSON object in " + path);
+        }
+        body = body.substring(1, body.length() - 1);
+        if (body.trim().isEmpty())
+        {
+            return;
+        }
+        Matcher matcher = JSON_ENTRY.matcher(body);
+        int position = 0;
+        while (true)
+        {
+            matcher.region(position, body.length());
+            if (!matcher.lookingAt())
+            {
+                throw new IllegalArgumentException("Invalid JSON entry in " + path + " at " + excerpt(body, position));
+            }
+            properties.setProperty(matcher.group(1), matcher.group(2) != null ? unescape(matcher.group(2)) : matcher.group(3));
+            position = matcher.end();
+            if (position == body.length())
+            {
+                return;
+            }
+            if (body.charAt(position) != ',')
+            {
+                throw new IllegalArgumentException("Expected , or } in " + path + " at " + excerpt(body, position));
+            }
+            position++;
+        }
+    }
+
+    private static String unescape (String value)
+    {
+        Matcher matcher = JSON_ESCAPE.matcher(value);
+        StringBuilder unescaped = new StringBuilder(value.length());
+        while (matcher.find())
+        {
+            String character;
+            if (matcher.group(1) != null)
+            {
+                character = String.valueOf((char) Integer.parseInt(matcher.group(1), 16));
+            }
+            else if ("\"\\/".contains(matcher.group(2)))
+            {
+                character = matcher.group(2);
+            }
+            else
+            {
+                throw new IllegalArgumentException("Unsupported JSON escape " + matcher.group());
+            }
+            matcher.appendReplacement(unescaped, Matcher.quoteReplacement(character));
+        }
+        matcher.appendTail(unescaped);
+        return unescaped.toString();
+    }
+
+    private static String excerpt (String text, int position)
+    {
+        return "\"" + text.substring(position, Math.min(text.length(), position + 20)).trim() + "\"";
+    }
+
+    /**
+     * Read a configuration from command line options: "-config file" loads a
+     * file, then each "-key value" overrides one parameter
+     * @param args The options
+     * @return The configuration
+     * @throws IOException If the configuration file cannot be read
+     * @throws IllegalArgumentException If an option has no value or a value is invalid
+     */
+    public static SimulationConfig fromArgs (String[] args) throws IOException
+    {
+        String file = null;
+        Properties overrides = new Properties();
+        for (int a = 0; a < args.length; a += 2)
+        {
+            if (!args[a].startsWith("-"))
+            {
+                throw new IllegalArgumentException("Expected an option instead of " + args[a]);
+            }
+            if (a + 1 == args.length)
+            {
+                throw new IllegalArgumentException("Missing the value of " + args[a]);
+            }
+            if (args[a].equals("-config"))
+            {
+                file = args[a + 1];
+            }
+            else
+            {
+                overrides.setProperty(args[a].substring(1), args[a + 1]);
+            }
+        }
+        return (file == null ? new SimulationConfig() : load(file)).with(overrides);
+    }
+
+    /**
+     * @param key The parameter key
+     * @param value The new value
+     * @return A copy of the configuration with one parameter changed
+     */
+    public SimulationConfig with (String key, String value)
+    {
+        Properties properties = toProperties();
+        properties.setProperty(key, value);
+        return new SimulationConfig(properties);
+    }
+
+    /**
+     * @param changes The parameters to change
+     * @return A copy of the configuration with the parameters changed
+     */
+    public SimulationConfig with (Properties changes)
+    {
+        Properties properties = toProperties();
+        properties.putAll(changes);
+        return new SimulationConfig(properties);
+    }
+
+    /**
+     * @return Every parameter as properties, which can be stored and loaded again
+     */
+    public Properties toProperties ()
+    {
+        Properties properties = new Properties();
+        properties.setProperty(PARTICLE_COUNT, "" + particleCount);
+        properties.setProperty(BOX_WIDTH, "" + boxWidth);
+        properties.setProperty(WALL_STIFFNESS, "" + wallStiffness);
+        properties.setProperty(GRAVITY, "" + gravity);
+        properties.setProperty(DT, "" + dt);
+        properties.setProperty(TF, "" + tf);
+        properties.setProperty(PARTICLE_WEIGHT, "" + particleWeight);
+        properties.setProperty(PARTICLE_RADIUS, "" + particleRadius);
+        properties.setProperty(EPSILON, "" + epsilon);
+        properties.setProperty(FORCECUTOFF, "" + forceCutoff);
+        properties.setProperty(NEIGHBOR_SKIN, "" + neighborSkin);
+        properties.setProperty(THREAD_COUNT, "" + threadCount);
+        properties.setProperty(SEED, "" + seed);
+        properties.setProperty(POTENTIAL, potential);
+        properties.setProperty(TABLE, table);
+        properties.setProperty(KERNEL, kernel);
+        properties.setProperty(RESPA_STEPS, "" + respaSteps);
+        properties.setProperty(RESPA_SPLIT, "" + respaSplit);
+        properties.setProperty(RESPA_HEALING, "" + respaHealing);
+        properties.setProperty(RESPA_OUTER, String.join(",", respaOuter));
+        properties.setProperty(ADAPTIVE_DT, "" + adaptiveDt);
+        properties.setProperty(DT_MIN, "" + dtMin);
+        properties.setProperty(DT_MAX, "" + dtMax);
+        properties.setProperty(STEP_DISPLACEMENT, "" + stepDisplacement);
+        properties.setProperty(PARTICLE_THREADS, particleThreads);
+        properties.setProperty(PLACEMENT, placement);
+        properties.setProperty(MIN_SEPARATION, "" + minSeparation);
+        return properties;
+    }
+
+    private static double read (Properties properties, String key, double defaultValue)
+    {
+        String value = properties.getProperty(key);
+        if (value == null)
+        {
+            return defaultValue;
+        }
+        double parsed = Double.parseDouble(value.trim());
+        /* NaN would pass every range check below */
+        if (!Double.isFinite(parsed))
+        {
+            throw new IllegalArgumentException("Expected a finite number for " + key + " instead of " + value);
+        }
+        return parsed;
+    }
+
+    private static boolean readFlag (Properties properties, String key, boolean defaultValue)
+    {
+        String value = properties.getProperty(key);
+        if (value == null)
+        {
+            return defaultValue;
+        }
+        if (!value.trim().equalsIgnoreCase("true") && !value.trim().equalsIgnoreCase("false"))
+        {
+            throw new IllegalArgumentException("Expected true or false for " + key + " instead of " + value);
+        }
+        return Boolean.parseBoolean(value.trim());
+    }
+
+    public int getParticleCount ()
+    {
+        return particleCount;
+    }
+
+    public double getBoxWidth ()
+    {
+        return boxWidth;
+    }
+
+    public double getWallStiffness ()
+    {
+        return wallStiffness;
+    }
+
+    public double getGravity ()
+    {
+        return gravity;
+    }
+
+    public double getDt ()
+    {
+        return dt;
+    }
+
+    public double getTf ()
+    {
+        return tf;
+    }
+
+    public double getParticleWeight ()
+    {
+        return particleWeight;
+    }
+
+    public double getParticleRadius ()
+    {
+        return particleRadius;
+    }
+
+    public double getEpsilon ()
+    {
+        return epsilon;
+    }
+
+    public double getForceCutoff ()
+    {
+        return forceCutoff;
+    }
+
+    /**
+     * @return The skin of the Verlet neighbour list, 0 when the cell list is used
+     */
+    public double getNeighborSkin ()
+    {
+        return neighborSkin;
+    }
+
+    public int getThreadCount ()
+    {
+        return threadCount;
+    }
+
+    /**
+     * @return The seed of the initial placement, negative for a random one
+     */
+    public long getSeed ()
+    {
+        return seed;
+    }
+
+    /**
+     * @return The pair potential: lj, wca, morse or soft
+     */
+    public String getPotential ()
+    {
+        return potential;
+    }
+
+    /**
+     * @return The interpolation of the pair potential table: none, linear or cubic
+     */
+    public String getTable ()
+    {
+        return table;
+    }
+
+    /**
+     * @return The pair loops: scalar, vector or auto
+     */
+    public String getKernel ()
+    {
+        return kernel;
+    }
+
+    /**
+     * @return The number of inner steps per step, 1 for plain velocity Verlet
+     */
+    public int getRespaSteps ()
+    {
+        return respaSteps;
+    }
+
+    /**
+     * @return The distance beyond which the pair forces are outer forces
+     */
+    public double getRespaSplit ()
+    {
+        return respaSplit;
+    }
+
+    /**
+     * @return The width over which the pair forces switch from inner to outer
+     */
+    public double getRespaHealing ()
+    {
+        return respaHealing;
+    }
+
+    /**
+     * @param force walls or gravity
+     * @return Whether the force is evaluated on the outer steps only
+     */
+    public boolean isRespaOuter (String force)
+    {
+        return respaOuter.contains(force);
+    }
+
+    /**
+     * @return Whether each step of the worker pool picks its own time step,
+     *         starting from dt
+     */
+    public boolean isAdaptiveDt ()
+    {
+        return adaptiveDt;
+    }
+
+    public double getDtMin ()
+    {
+        return dtMin;
+    }
+
+    public double getDtMax ()
+    {
+        return dtMax;
+    }
+
+    /**
+     * @return The largest distance a particle may move in one adaptive step
+     */
+    public double getStepDisplacement ()
+    {
+        return stepDisplacement;
+    }
+
+    /**
+     * @return The threads of the thread per particle mode: platform or virtual
+     */
+    public String getParticleThreads ()
+    {
+        return particleThreads;
+    }
+
+    /**
+     * @return The initial placement: square, hex, jittered, poisson or random
+     */
+    public String getPlacement ()
+    {
+        return placement;
+    }
+
+    /**
+     * @return The smallest initial distance between two particles, except
+     *         for the random placement
+     */
+    public double getMinSeparation ()
+    {
+        return minSeparation;
+    }
+
+    @Override
+    public String toString ()
+    {
+        return "SimulationConfig " + toProperties();
+    }
+}
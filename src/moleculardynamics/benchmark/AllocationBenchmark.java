@@ -0,0 +1,78 @@
+package moleculardynamics.benchmark;
+
+import java.lang.management.ManagementFactory;
+
+import moleculardynamics.physics.UnitCell;
+
+
+/**
+ * Allocation benchmark
+ * Counts the bytes allocated by every thread of the JVM during steady-state
+ * steps of the worker pool engine, and fails if a step allocates anything.
+ * Two batches of different lengths are measured: each call to step(count)
+ * may allocate a constant amount to wait for the pool, the steps themselves
+ * must not, so both batches must allocate the same number of bytes. The
+ * smallest of a few repetitions is kept, which filters out the occasional
+ * bytes allocated by the pool when its workers go idle between calls
+ */
+public class AllocationBenchmark
+{
+    private static final int WARMUP_STEPS = 2000;
+    private static final int SHORT_BATCH = 10;
+    private static final int LONG_BATCH = 1000;
+    private static final int REPETITIONS = 5;
+
+
+    /**
+     * Main function
+     * @param args Optional number of particles and threads, default 2000 and 2
+     */
+    public static void main (String[] args)
+    {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+
+        UnitCell uc = new UnitCell(n);
+        uc.useWorkerPool(threads);
+        uc.step(WARMUP_STEPS);
+
+        long shortBatch = allocatedBytes(uc, SHORT_BATCH);
+        long longBatch = allocatedBytes(uc, LONG_BATCH);
+        uc.getEngine().shutdown();
+
+        double bytesPerStep = (double) (longBatch - shortBatch) / (LONG_BATCH - SHORT_BATCH);
+        System.out.println("bytes/call\t" + shortBatch + "\tbytes/step\t" + bytesPerStep);
+        if (longBatch != shortBatch)
+        {
+            throw new IllegalStateException("Steady-state step allocates " + bytesPerStep + " bytes");
+        }
+    }
+
+    /* Fewest bytes allocated by all threads while running one batch */
+    private static long allocatedBytes (UnitCell uc, int steps)
+    {
+        long min = Long.MAX_VALUE;
+        for (int r = 0; r < REPETITIONS; r++)
+        {
+            long before = allocatedBytes();
+            uc.step(steps);
+            min = Math.min(min, allocatedBytes() - before);
+        }
+        return min;
+    }
+
+    /* Bytes allocated so far by all live threads */
+    private static long allocatedBytes ()
+    {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long allocated : bean.getThreadAllocatedBytes(bean.getAllThreadIds()))
+        {
+            if (allocated > 0)
+            {
+                total += allocated;
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,317 @@
+package moleculardynamics.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import moleculardynamics.SimulationConfig;
+import moleculardynamics.io.SnapshotPipeline;
+import moleculardynamics.io.TrajectoryWriter;
+import moleculardynamics.physics.CellList;
+import moleculardynamics.physics.ParticleStore;
+import moleculardynamics.physics.PoolEngine;
+import moleculardynamics.physics.UnitCell;
+
+
+/**
+ * Benchmark suite
+ * Measures the force evaluation alone, the integrator update alone, the
+ * full step of the worker pool engine, the writing of one trajectory frame
+ * to a temporary file, and the full step with every frame written through
+ * a blocking snapshot pipeline, for every combination of particle
+ * count, density and thread count. Each measurement runs time-boxed warmup
+ * iterations, then measurement iterations from a freshly placed lattice, and
+ * prints the mean and standard deviation per operation, the nanoseconds per
+ * pair interaction and the steps per second. Runs headless:
+ *
+ *   java -Djava.awt.headless=true moleculardynamics.benchmark.BenchmarkSuite
+ *        [-n 100,1000,...] [-density 0.5,...] [-threads 1,2,...]
+ *        [-bench forces,integrator,step,trajectory,snapshot] [-time 0.5] [-warmup 3] [-iterations 5]
+ *        [-kernel scalar,vector] [-neighborSkin 0.3] [-config file] [-key value]
+ *
+ * The remaining options set the SimulationConfig, whose particle count, box
+ * width, thread count and kernel are replaced by the swept values. The vector
+ * kernel only runs with a neighbour list, so comparing it with the scalar
+ * one takes a -neighborSkin greater than 0. The kernel column names the
+ * pair loops that actually ran
+ */
+public class BenchmarkSuite
+{
+    private static final String FORCES = "forces";
+    private static final String INTEGRATOR = "integrator";
+    private static final String STEP = "step";
+    private static final String TRAJECTORY = "trajectory";
+    private static final String SNAPSHOT = "snapshot";
+
+    private int[] counts = { 100, 1000, 10000, 100000, 1000000 };
+    private double[] densities = { 0.5 };
+    private int[] threads = defaultThreads();
+    /* The kernel of the configuration when null */
+    private String[] kernels;
+    private String[] benchmarks = { FORCES, INTEGRATOR, STEP, TRAJECTORY, SNAPSHOT };
+    private double iterationTime = 0.5;
+    private int warmupIterations = 3;
+    private int measurementIterations = 5;
+    private SimulationConfig config = new SimulationConfig();
+
+
+    /**
+     * Main function. Runs every benchmark selected on the command line
+     */
+    public static void main (String[] args) throws IOException
+    {
+        BenchmarkSuite suite = new BenchmarkSuite();
+        suite.parse(args);
+        suite.run();
+    }
+
+    private void parse (String[] args) throws IOException
+    {
+        List<String> options = new ArrayList<String>();
+        for (int a = 0; a + 1 < args.length; a += 2)
+        {
+            String value = args[a + 1];
+            switch (args[a])
+            {
+                case "-n":
+                    counts = parseInts(value);
+                    break;
+                case "-density":
+                    String[] parts = value.split(",");
+                    densities = new double[parts.length];
+                    for (int i = 0; i < parts.length; i++)
+                    {
+                        densities[i] = Double.parseDouble(parts[i]);
+                    }
+                    break;
+                case "-threads":
+                    threads = parseInts(value);
+                    break;
+                case "-kernel":
+                    kernels = value.split(",");
+                    break;
+                case "-bench":
+                    benchmarks = value.split(",");
+                    break;
+                case "-time":
+                    iterationTime = Double.parseDouble(value);
+                    break;
+                case "-warmup":
+                    warmupIterations = Integer.parseInt(value);
+                    break;
+                case "-iterations":
+                    measurementIterations = Integer.parseInt(value);
+                    break;
+                default:
+                    options.add(args[a]);
+                    options.add(value);
+            }
+        }
+        if (args.length % 2 != 0)
+        {
+            /* Rejected by fromArgs, as an option without a value */
+            options.add(args[args.length - 1]);
+        }
+        config = SimulationConfig.fromArgs(options.toArray(new String[options.size()]));
+    }
+
+    private void run () throws IOException
+    {
+        System.out.println("benchmark\tkernel\tN\tdensity\tthreads\tms/op\terror\tns/pair\tops/s");
+        String[] sweptKernels = kernels != null ? kernels : new String[] { config.getKernel() };
+        for (String benchmark : benchmarks)
+        {
+            for (int n : counts)
+            {
+                for (double density : densities)
+                {
+                    for (int t : threads)
+                    {
+                        for (String kernel : sweptKernels)
+                        {
+                            measure(benchmark, kernel, n, density, t);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void measure (String benchmark, String kernel, int n, double density, int threadCount) throws IOException
+    {
+        double boxWidth = Math.sqrt(n / density);
+        UnitCell uc = new UnitCell(config.with(SimulationConfig.PARTICLE_COUNT, "" + n)
+            .with(SimulationConfig.BOX_WIDTH, "" + boxWidth)
+            .with(SimulationConfig.THREAD_COUNT, "" + threadCount)
+            .with(SimulationConfig.KERNEL, kernel.trim()));
+        uc.useWorkerPool(threadCount);
+        PoolEngine engine = uc.getEngine();
+        long pairs = place(uc, new Random(n));
+        Path trajectoryFile = null;
+        TrajectoryWriter trajectory = null;
+        SnapshotPipeline snapshots = null;
+        if (benchmark.equals(TRAJECTORY) || benchmark.equals(SNAPSHOT))
+        {
+            trajectoryFile = Files.createTempFile("trajectory", ".bin");
+            trajectory = new TrajectoryWriter(trajectoryFile, n, boxWidth, uc.getConfig().getDt(),
+                uc.getConfig().isAdaptiveDt(), 1);
+        }
+        if (benchmark.equals(SNAPSHOT))
+        {
+            snapshots = new SnapshotPipeline(n, 4, 1, SnapshotPipeline.Policy.BLOCK, trajectory);
+            uc.setSnapshotPipeline(snapshots);
+        }
+
+        List<Double> samples = new ArrayList<Double>();
+        for (int it = 0; it < warmupIterations + measurementIterations; it++)
+        {
+            place(uc, new Random(n));
+            long ops = 0;
+            long start = System.nanoTime();
+            long end = start + (long) (iterationTime * 1e9);
+            long now;
+            do
+            {
+                if (benchmark.equals(FORCES))
+                {
+                    engine.computeForces();
+                }
+                else if (benchmark.equals(INTEGRATOR))
+                {
+                    engine.integrate();
+                }
+                else if (benchmark.equals(TRAJECTORY))
+                {
+                    trajectory.sample(ops, ops, uc.getStore());
+                }
+                else
+                {
+                    engine.step();
+                }
+                ops++;
+                now = System.nanoTime();
+            }
+            while (now < end);
+
+            if (it >= warmupIterations)
+            {
+                samples.add((now - start) / (double) ops);
+            }
+        }
+        engine.shutdown();
+        if (snapshots != null)
+        {
+            snapshots.close();
+        }
+        if (trajectory != null)
+        {
+            trajectory.close();
+            Files.delete(trajectoryFile);
+        }
+
+        double mean = 0;
+        for (double sample : samples)
+        {
+            mean += sample;
+        }
+        mean /= samples.size();
+        double variance = 0;
+        for (double sample : samples)
+        {
+            variance += (sample - mean) * (sample - mean);
+        }
+        double deviation = samples.size() > 1 ? Math.sqrt(variance / (samples.size() - 1)) : 0;
+
+        String perPair = benchmark.equals(INTEGRATOR) || benchmark.equals(TRAJECTORY) || pairs == 0 ? "-" : String.format("%.2f", mean / pairs);
+        System.out.println(String.format("%s\t%s\t%d\t%.2f\t%d\t%.4f\t%.4f\t%s\t%.1f", benchmark,
+            uc.getForceKernel().getName(), n, density, threadCount, mean / 1e6, deviation / 1e6, perPair, 1e9 / mean));
+    }
+
+    /*
+     * Place the particles at rest on a jittered square lattice filling the box,
+     * in both the current and the next-step buffers, rebin them in the lists of
+     * the unit cell, and count the pairs within the cutoff
+     */
+    private static long place (UnitCell uc, Random random)
+    {
+        ParticleStore store = uc.getStore();
+        int n = store.size();
+        int side = (int) Math.ceil(Math.sqrt(n));
+        double spacing = uc.getBoxWidth() / side;
+        for (int i = 0; i < n; i++)
+        {
+            double x = ((i % side) + 0.5 + 0.2 * (random.nextDouble() - 0.5)) * spacing;
+            double y = ((i / side) + 0.5 + 0.2 * (random.nextDouble() - 0.5)) * spacing;
+            store.getX()[i] = x;
+            store.getY()[i] = y;
+            store.getNextX()[i] = x;
+            store.getNextY()[i] = y;
+            store.getVx()[i] = 0;
+            store.getVy()[i] = 0;
+            store.getAx()[i] = 0;
+            store.getAy()[i] = 0;
+        }
+        uc.restore(0, 0, uc.getConfig().getDt());
+
+        final double cutoff = uc.getConfig().getForceCutoff();
+        CellList cellList = new CellList(uc.getBoxWidth(), cutoff);
+        final double[] x = store.getX(), y = store.getY();
+        final double cutoffSquared = cutoff * cutoff;
+        final int cellsPerSide = cellList.getCellsPerSide();
+        cellList.build(x, y, n);
+        long pairs = 0;
+        for (int i = 0; i < n; i++)
+        {
+            int cx = cellList.cellCoordinate(x[i]);
+            int cy = cellList.cellCoordinate(y[i]);
+            for (int ny = Math.max(0, cy - 1); ny <= Math.min(cellsPerSide - 1, cy + 1); ny++)
+            {
+                for (int nx = Math.max(0, cx - 1); nx <= Math.min(cellsPerSide - 1, cx + 1); nx++)
+                {
+                    for (int j = cellList.getHead(ny * cellsPerSide + nx); j >= 0; j = cellList.getNext(j))
+                    {
+                        double dx = x[i] - x[j];
+                        double dy = y[i] - y[j];
+                        if (j > i && dx * dx + dy * dy < cutoffSquared)
+                        {
+                            pairs++;
+                        }
+                    }
+                }
+            }
+        }
+        return pairs;
+    }
+
+    private static int[] parseInts (String value)
+    {
+        String[] parts = value.split(",");
+        int[] result = new int[parts.length];
+        for (int i = 0; i < parts.length; i++)
+        {
+            result[i] = Integer.parseInt(parts[i]);
+        }
+        return result;
+    }
+
+    /* 1, 2, 4... up to the number of cores */
+    private static int[] defaultThreads ()
+    {
+        int cores = Runtime.getRuntime().availableProcessors();
+        List<Integer> values = new ArrayList<Integer>();
+        for (int t = 1; t < cores; t *= 2)
+        {
+            values.add(t);
+        }
+        values.add(cores);
+        int[] result = new int[values.size()];
+        for (int i = 0; i < result.length; i++)
+        {
+            result[i] = values.get(i);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,139 @@
+package moleculardynamics.benchmark;
+
+import java.util.Random;
+
+import moleculardynamics.Parameters;
+import moleculardynamics.physics.CellList;
+
+
+/**
+ * Neighbour search benchmark
+ * Times one Lennard-Jones pass over N particles at constant density, with the
+ * cell list and with the all-pairs loop, to show how the step cost grows with N
+ */
+public class CellListBenchmark
+{
+    /* Particles per unit area, the box grows with N */
+    private static final double DENSITY = 0.5;
+
+    /* Largest N for which the all-pairs loop is still timed */
+    private static final int MAX_ALL_PAIRS = 16000;
+
+    private static final int REPETITIONS = 5;
+
+    /* Keeps the JIT from discarding the passes */
+    static volatile double sink;
+
+
+    /**
+     * Main function. Runs the benchmark for N = 1000 up to 512000
+     */
+    public static void main (String[] args)
+    {
+        System.out.println("N\tcells (ms)\tns/particle\tall pairs (ms)");
+        for (int n = 1000; n <= 512000; n *= 2)
+        {
+            run(n, new Random(n));
+        }
+    }
+
+    private static void run (int n, Random random)
+    {
+        double boxWidth = Math.sqrt(n / DENSITY);
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++)
+        {
+            x[i] = random.nextDouble() * boxWidth;
+            y[i] = random.nextDouble() * boxWidth;
+        }
+        CellList cellList = new CellList(boxWidth, Parameters.FORCECUTOFF);
+
+        /* Warm up, then keep the best repetition */
+        long cells = Long.MAX_VALUE;
+        for (int r = 0; r < REPETITIONS + 2; r++)
+        {
+            long start = System.nanoTime();
+            sink += cellsPass(cellList, x, y, n);
+            cells = Math.min(cells, System.nanoTime() - start);
+        }
+
+        String allPairs = "-";
+        if (n <= MAX_ALL_PAIRS)
+        {
+            long best = Long.MAX_VALUE;
+            for (int r = 0; r < 3; r++)
+            {
+                long start = System.nanoTime();
+                sink += allPairsPass(x, y, n);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            allPairs = String.format("%.2f", best / 1e6);
+        }
+
+        System.out.println(String.format("%d\t%.2f\t%.1f\t%s", n, cells / 1e6, (double) cells / n, allPairs));
+    }
+
+    private static double cellsPass (CellList cellList, double[] x, double[] y, int n)
+    {
+        final double cutoffSquared = Parameters.FORCECUTOFF * Parameters.FORCECUTOFF;
+        final int cellsPerSide = cellList.getCellsPerSide();
+        double sum = 0;
+
+        cellList.clear(n);
+        for (int i = 0; i < n; i++)
+        {
+            cellList.insert(i, x[i], y[i]);
+        }
+        for (int i = 0; i < n; i++)
+        {
+            int cx = cellList.cellCoordinate(x[i]);
+            int cy = cellList.cellCoordinate(y[i]);
+            for (int ny = Math.max(0, cy - 1); ny <= Math.min(cellsPerSide - 1, cy + 1); ny++)
+            {
+                for (int nx = Math.max(0, cx - 1); nx <= Math.min(cellsPerSide - 1, cx + 1); nx++)
+                {
+                    for (int j = cellList.getHead(ny * cellsPerSide + nx); j >= 0; j = cellList.getNext(j))
+                    {
+                        if (j != i)
+                        {
+                            sum += force(x[i] - x[j], y[i] - y[j], cutoffSquared);
+                        }
+                    }
+                }
+            }
+        }
+        return sum;
+    }
+
+    private static double allPairsPass (double[] x, double[] y, int n)
+    {
+        final double cutoffSquared = Parameters.FORCECUTOFF * Parameters.FORCECUTOFF;
+        double sum = 0;
+        for (int i = 0; i < n; i++)
+        {
+            for (int j = 0; j < n; j++)
+            {
+                if (j != i)
+                {
+                    sum += force(x[i] - x[j], y[i] - y[j], cutoffSquared);
+                }
+            }
+        }
+        return sum;
+    }
+
+    /* Same Lennard-Jones expression as Particle, returns the force over the distance */
+    private static double force (double dx, double dy, double cutoffSquared)
+    {
+        double distanceSquared = dx * dx + dy * dy;
+        if (distanceSquared >= cutoffSquared)
+        {
+            return 0;
+        }
+        double distanceInv = 1.0 / Math.sqrt(distanceSquared);
+        double attract = Math.pow(Parameters.PARTICLE_RADIUS * distanceInv, 6);
+        double repul = Math.pow(Parameters.PARTICLE_RADIUS * distanceInv, 12);
+        return -24 * Parameters.EPSILON * (2 * (repul * distanceInv) - (attract * distanceInv));
+    }
+}
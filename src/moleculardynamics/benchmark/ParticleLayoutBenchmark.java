@@ -0,0 +1,163 @@
+package moleculardynamics.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import moleculardynamics.Parameters;
+import moleculardynamics.maths.Vector2D;
+import moleculardynamics.physics.CellList;
+import moleculardynamics.physics.ParticleStore;
+
+
+/**
+ * Particle layout benchmark
+ * Compares the heap used per particle and the pair loop throughput of the
+ * ParticleStore arrays against one object holding six Vector2D per particle
+ */
+public class ParticleLayoutBenchmark
+{
+    private static final int N = 500000;
+    private static final double DENSITY = 0.5;
+    private static final int REPETITIONS = 5;
+
+    static volatile double sink;
+
+    /* The former layout, one object and six vectors per particle */
+    private static class ObjectParticle
+    {
+        Vector2D position, newPosition, velocity, newVelocity, acceleration, newAcceleration;
+    }
+
+
+    /**
+     * Main function. Runs the benchmark for 500000 particles
+     */
+    public static void main (String[] args)
+    {
+        double boxWidth = Math.sqrt(N / DENSITY);
+
+        long before = usedHeap();
+        List<ObjectParticle> objects = new ArrayList<ObjectParticle>(N);
+        Random random = new Random(1);
+        for (int i = 0; i < N; i++)
+        {
+            ObjectParticle p = new ObjectParticle();
+            p.position = new Vector2D(random.nextDouble() * boxWidth, random.nextDouble() * boxWidth);
+            p.newPosition = new Vector2D(p.position);
+            p.velocity = new Vector2D();
+            p.newVelocity = new Vector2D();
+            p.acceleration = new Vector2D();
+            p.newAcceleration = new Vector2D();
+            objects.add(p);
+        }
+        long objectBytes = usedHeap() - before;
+
+        before = usedHeap();
+        ParticleStore store = new ParticleStore(N);
+        random = new Random(1);
+        for (int i = 0; i < N; i++)
+        {
+            store.getX()[i] = random.nextDouble() * boxWidth;
+            store.getY()[i] = random.nextDouble() * boxWidth;
+        }
+        long storeBytes = usedHeap() - before;
+
+        System.out.println(String.format("bytes/particle\tobjects %.1f\tstore %.1f",
+            (double) objectBytes / N, (double) storeBytes / N));
+
+        CellList cellList = new CellList(boxWidth, Parameters.FORCECUTOFF);
+        long objectTime = Long.MAX_VALUE;
+        long storeTime = Long.MAX_VALUE;
+        for (int r = 0; r < REPETITIONS; r++)
+        {
+            long start = System.nanoTime();
+            sink += objectPass(objects, cellList);
+            objectTime = Math.min(objectTime, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            sink += storePass(store, cellList);
+            storeTime = Math.min(storeTime, System.nanoTime() - start);
+        }
+        System.out.println(String.format("pair pass (ms)\tobjects %.1f\tstore %.1f",
+            objectTime / 1e6, storeTime / 1e6));
+    }
+
+    private static double objectPass (List<ObjectParticle> particles, CellList cellList)
+    {
+        final double cutoffSquared = Parameters.FORCECUTOFF * Parameters.FORCECUTOFF;
+        final int cellsPerSide = cellList.getCellsPerSide();
+        double sum = 0;
+        cellList.clear(particles.size());
+        for (int i = 0; i < particles.size(); i++)
+        {
+            Vector2D position = particles.get(i).position;
+            cellList.insert(i, position.getX(), position.getY());
+        }
+        for (int i = 0; i < particles.size(); i++)
+        {
+            Vector2D p = particles.get(i).newPosition;
+            int cx = cellList.cellCoordinate(p.getX());
+            int cy = cellList.cellCoordinate(p.getY());
+            for (int ny = Math.max(0, cy - 1); ny <= Math.min(cellsPerSide - 1, cy + 1); ny++)
+            {
+                for (int nx = Math.max(0, cx - 1); nx <= Math.min(cellsPerSide - 1, cx + 1); nx++)
+                {
+                    for (int j = cellList.getHead(ny * cellsPerSide + nx); j >= 0; j = cellList.getNext(j))
+                    {
+                        Vector2D q = particles.get(j).position;
+                        double dx = p.getX() - q.getX();
+                        double dy = p.getY() - q.getY();
+                        double r2 = dx * dx + dy * dy;
+                        if (j != i && r2 < cutoffSquared)
+                        {
+                            sum += 1.0 / r2;
+                        }
+                    }
+                }
+            }
+        }
+        return sum;
+    }
+
+    private static double storePass (ParticleStore store, CellList cellList)
+    {
+        final double cutoffSquared = Parameters.FORCECUTOFF * Parameters.FORCECUTOFF;
+        final int cellsPerSide = cellList.getCellsPerSide();
+        final double[] x = store.getX(), y = store.getY();
+        double sum = 0;
+        cellList.build(x, y, store.size());
+        for (int i = 0; i < store.size(); i++)
+        {
+            int cx = cellList.cellCoordinate(x[i]);
+            int cy = cellList.cellCoordinate(y[i]);
+            for (int ny = Math.max(0, cy - 1); ny <= Math.min(cellsPerSide - 1, cy + 1); ny++)
+            {
+                for (int nx = Math.max(0, cx - 1); nx <= Math.min(cellsPerSide - 1, cx + 1); nx++)
+                {
+                    for (int j = cellList.getHead(ny * cellsPerSide + nx); j >= 0; j = cellList.getNext(j))
+                    {
+                        double dx = x[i] - x[j];
+                        double dy = y[i] - y[j];
+                        double r2 = dx * dx + dy * dy;
+                        if (j != i && r2 < cutoffSquared)
+                        {
+                            sum += 1.0 / r2;
+                        }
+                    }
+                }
+            }
+        }
+        return sum;
+    }
+
+    private static long usedHeap ()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+        {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,116 @@
+package moleculardynamics.benchmark;
+
+import java.util.Random;
+
+import moleculardynamics.SimulationConfig;
+import moleculardynamics.physics.ParticleStore;
+import moleculardynamics.physics.UnitCell;
+
+
+/**
+ * Particle thread benchmark
+ * Runs the thread per particle mode on platform threads and on virtual
+ * threads for increasing particle counts, and prints the time to start the
+ * threads, the steps per second and the particle-steps per second of a fixed
+ * number of steps from a jittered lattice. A count the runtime cannot start
+ * threads for is reported as failed. Virtual threads need Java 21, before
+ * that the virtual rows run on platform threads and say so:
+ *
+ *   java -Djava.awt.headless=true moleculardynamics.benchmark.ParticleThreadBenchmark
+ *        [-n 1000,4000,...] [-steps 20] [-density 0.5]
+ */
+public class ParticleThreadBenchmark
+{
+    private static final String[] MODES = { "platform", "virtual" };
+
+
+    /**
+     * Main function. Runs every mode for every particle count
+     */
+    public static void main (String[] args) throws InterruptedException
+    {
+        int[] counts = { 1000, 4000, 16000, 64000, 128000 };
+        int steps = 20;
+        double density = 0.5;
+        for (int a = 0; a + 1 < args.length; a += 2)
+        {
+            switch (args[a])
+            {
+                case "-n":
+                    String[] parts = args[a + 1].split(",");
+                    counts = new int[parts.length];
+                    for (int i = 0; i < parts.length; i++)
+                    {
+                        counts[i] = Integer.parseInt(parts[i].trim());
+                    }
+                    break;
+                case "-steps":
+                    steps = Integer.parseInt(args[a + 1]);
+                    break;
+                case "-density":
+                    density = Double.parseDouble(args[a + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[a]);
+            }
+        }
+
+        System.out.println("mode\tthreads\tparticles\tstart (ms)\tsteps/s\tparticle-steps/s");
+        for (int n : counts)
+        {
+            for (String mode : MODES)
+            {
+                run(mode, n, steps, density);
+            }
+        }
+    }
+
+    private static void run (String mode, int n, int steps, double density) throws InterruptedException
+    {
+        SimulationConfig config = new SimulationConfig()
+            .with(SimulationConfig.PARTICLE_COUNT, "" + n)
+            .with(SimulationConfig.BOX_WIDTH, "" + Math.sqrt(n / density))
+            .with(SimulationConfig.PARTICLE_THREADS, mode);
+        config = config.with(SimulationConfig.TF, "" + (steps - 0.5) * config.getDt());
+        UnitCell uc = new UnitCell(config);
+        place(uc, new Random(n));
+
+        long start = System.nanoTime();
+        try
+        {
+            uc.start();
+        }
+        catch (OutOfMemoryError e)
+        {
+            /* Out of native threads, the started ones are stuck on the barrier */
+            System.out.println(String.format("%s\t-\t%d\tfailed: %s", mode, n, e.getMessage()));
+            System.exit(1);
+        }
+        long started = System.nanoTime();
+        uc.join();
+        long end = System.nanoTime();
+
+        double seconds = (end - start) / 1e9;
+        System.out.println(String.format("%s\t%s\t%d\t%.1f\t%.2f\t%.4g", mode, uc.getParticleThreads(), n,
+            (started - start) / 1e6, uc.getStepCount() / seconds, uc.getStepCount() * (double) n / seconds));
+    }
+
+    /* Place the particles at rest on a jittered square lattice filling the box */
+    private static void place (UnitCell uc, Random random)
+    {
+        ParticleStore store = uc.getStore();
+        int n = store.size();
+        int side = (int) Math.ceil(Math.sqrt(n));
+        double spacing = uc.getBoxWidth() / side;
+        for (int i = 0; i < n; i++)
+        {
+            store.getX()[i] = ((i % side) + 0.5 + 0.2 * (random.nextDouble() - 0.5)) * spacing;
+            store.getY()[i] = ((i / side) + 0.5 + 0.2 * (random.nextDouble() - 0.5)) * spacing;
+            store.getVx()[i] = 0;
+            store.getVy()[i] = 0;
+            store.getAx()[i] = 0;
+            store.getAy()[i] = 0;
+        }
+        uc.restore(0, 0, uc.getConfig().getDt());
+    }
+}
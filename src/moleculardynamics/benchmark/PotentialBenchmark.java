@@ -0,0 +1,178 @@
+package moleculardynamics.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import moleculardynamics.SimulationConfig;
+import moleculardynamics.potential.PairPotential;
+import moleculardynamics.potential.Potentials;
+import moleculardynamics.potential.TabulatedPotential;
+
+
+/**
+ * Pair potential benchmark
+ * Times one force evaluation of every pair potential, exact and tabulated,
+ * on squared distances drawn up to the cutoff, next to the Math.pow
+ * Lennard-Jones formula the force kernel used before. The tables also print
+ * their largest force and energy errors relative to the exact potential.
+ * Runs headless:
+ *
+ *   java moleculardynamics.benchmark.PotentialBenchmark [-time 0.5] [-warmup 3] [-iterations 5]
+ *        [-config file] [-key value]
+ */
+public class PotentialBenchmark
+{
+    private static final String[] POTENTIALS = { "lj", "wca", "morse", "soft" };
+    private static final int SAMPLES = 1 << 16;
+
+    private double iterationTime = 0.5;
+    private int warmupIterations = 3;
+    private int measurementIterations = 5;
+    private SimulationConfig config = new SimulationConfig();
+    private double[] distances;
+    /* Keeps the evaluations alive */
+    private double sink;
+
+
+    /**
+     * Main function. Times every potential and table
+     */
+    public static void main (String[] args) throws IOException
+    {
+        PotentialBenchmark benchmark = new PotentialBenchmark();
+        benchmark.parse(args);
+        benchmark.run();
+    }
+
+    private void parse (String[] args) throws IOException
+    {
+        List<String> options = new ArrayList<String>();
+        for (int a = 0; a + 1 < args.length; a += 2)
+        {
+            String value = args[a + 1];
+            switch (args[a])
+            {
+                case "-time":
+                    iterationTime = Double.parseDouble(value);
+                    break;
+                case "-warmup":
+                    warmupIterations = Integer.parseInt(value);
+                    break;
+                case "-iterations":
+                    measurementIterations = Integer.parseInt(value);
+                    break;
+                default:
+                    options.add(args[a]);
+                    options.add(value);
+            }
+        }
+        if (args.length % 2 != 0)
+        {
+            /* Rejected by fromArgs, as an option without a value */
+            options.add(args[args.length - 1]);
+        }
+        config = SimulationConfig.fromArgs(options.toArray(new String[options.size()]));
+    }
+
+    private void run ()
+    {
+        /* Pairs inside the cutoff, no closer than the repulsion lets them come */
+        double sigma = config.getParticleRadius();
+        double cutoff = config.getForceCutoff();
+        double fromSquared = 0.8 * sigma * 0.8 * sigma;
+        Random random = new Random(1);
+        distances = new double[SAMPLES];
+        for (int k = 0; k < SAMPLES; k++)
+        {
+            distances[k] = fromSquared + random.nextDouble() * (cutoff * cutoff - fromSquared);
+        }
+
+        System.out.println("potential\ttable\tns/eval\terror\tforce error\tenergy error");
+        measure("lj-pow", "none", new PowLennardJones(sigma, config.getEpsilon()));
+        for (String potential : POTENTIALS)
+        {
+            for (String table : new String[] { "none", "linear", "cubic" })
+            {
+                SimulationConfig tabulated = config.with(SimulationConfig.POTENTIAL, potential)
+                    .with(SimulationConfig.TABLE, table);
+                measure(potential, table, Potentials.create(tabulated));
+            }
+        }
+    }
+
+    private void measure (String name, String table, PairPotential potential)
+    {
+        for (int w = 0; w < warmupIterations; w++)
+        {
+            iteration(potential);
+        }
+        double sum = 0, sumSquares = 0;
+        for (int m = 0; m < measurementIterations; m++)
+        {
+            double ns = iteration(potential);
+            sum += ns;
+            sumSquares += ns * ns;
+        }
+        double mean = sum / measurementIterations;
+        double error = Math.sqrt(Math.max(0, sumSquares / measurementIterations - mean * mean));
+
+        String accuracy = "-\t-";
+        if (potential instanceof TabulatedPotential)
+        {
+            double[] errors = ((TabulatedPotential) potential).accuracy(0.8 * config.getParticleRadius(), 100000);
+            accuracy = String.format("%.2e\t%.2e", errors[0], errors[1]);
+        }
+        System.out.println(String.format("%s\t%s\t%.2f\t%.2f\t%s", name, table, mean, error, accuracy));
+    }
+
+    /* Nanoseconds per evaluation, over passes on the samples for about the iteration time */
+    private double iteration (PairPotential potential)
+    {
+        long budget = (long) (iterationTime * 1e9);
+        long start = System.nanoTime();
+        long evaluations = 0;
+        double sum = 0;
+        do
+        {
+            for (int k = 0; k < SAMPLES; k++)
+            {
+                sum += potential.forceOverDistance(distances[k]);
+            }
+            evaluations += SAMPLES;
+        }
+        while (System.nanoTime() - start < budget);
+        sink += sum;
+        return (System.nanoTime() - start) / (double) evaluations;
+    }
+
+    /* The Lennard-Jones force as the kernel computed it before the pair potentials */
+    private static class PowLennardJones implements PairPotential
+    {
+        private final double radius;
+        private final double epsilon;
+
+        PowLennardJones (double radius, double epsilon)
+        {
+            this.radius = radius;
+            this.epsilon = epsilon;
+        }
+
+        @Override
+        public double forceOverDistance (double distanceSquared)
+        {
+            double distanceInv = 1.0 / Math.sqrt(distanceSquared);
+            double attract = Math.pow(radius * distanceInv, 6);
+            double repul = Math.pow(radius * distanceInv, 12);
+            return 24 * epsilon * (2 * repul - attract) * distanceInv * distanceInv;
+        }
+
+        @Override
+        public double energy (double distanceSquared)
+        {
+            double attract = Math.pow(radius * radius / distanceSquared, 3);
+            return 4 * epsilon * (attract * attract - attract);
+        }
+    }
+}
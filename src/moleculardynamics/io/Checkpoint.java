@@ -0,0 +1,299 @@
+package moleculardynamics.io;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.SplittableRandom;
+
+import moleculardynamics.SimulationConfig;
+import moleculardynamics.physics.NeighborList;
+import moleculardynamics.physics.ParticleStore;
+import moleculardynamics.physics.UnitCell;
+import moleculardynamics.placement.Placement;
+
+
+/**
+ * Checkpoint
+ * Saves and restores the full state of a unit cell: the clock and the last
+ * time step, the configuration, the positions, velocities, accelerations, radii and
+ * weights, and the reference positions of the neighbour list. The arrays are
+ * written as little-endian doubles in one sequential pass through a direct
+ * buffer, to a temporary file that is then renamed over the checkpoint, and
+ * the rename synced with the directory, so that a crash never leaves a
+ * partial checkpoint behind. A failed write deletes its temporary file. A
+ * restored unit cell continues bit for bit, given the same thread count
+ */
+public final class Checkpoint
+{
+    public static final long MAGIC = 0x4D44434B50543031L;
+    public static final int VERSION = 2;
+
+    private static final int ENGINE = 1;
+    private static final int NEIGHBOR_LIST = 2;
+    private static final int BUFFER_BYTES = 1 << 20;
+
+
+    private Checkpoint ()
+    {
+    }
+
+    /**
+     * Write a checkpoint atomically, replacing any previous one
+     * @param unitCell The unit cell, between two steps
+     * @param path The checkpoint path
+     * @throws IOException If the checkpoint cannot be written
+     */
+    public static void write (UnitCell unitCell, Path path) throws IOException
+    {
+        ParticleStore store = unitCell.getStore();
+        NeighborList neighborList = unitCell.getNeighborList();
+        int n = store.size();
+        byte[] config = encode(unitCell.getConfig());
+        int flags = (unitCell.getEngine() != null ? ENGINE : 0) | (neighborList != null ? NEIGHBOR_LIST : 0);
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try
+        {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+            {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putLong(MAGIC).putInt(VERSION).putInt(n).putLong(unitCell.getStepCount());
+                buffer.putDouble(unitCell.getElapsedTime()).putInt(flags);
+                buffer.putDouble(neighborList != null ? neighborList.getSkin() : 0);
+                buffer.putDouble(unitCell.getTimeStep());
+                buffer.putInt(config.length);
+                if (config.length > buffer.remaining())
+                {
+                    throw new IOException("Configuration too large");
+                }
+                buffer.put(config);
+
+                write(channel, buffer, store.getX(), n);
+                write(channel, buffer, store.getY(), n);
+                write(channel, buffer, store.getVx(), n);
+                write(channel, buffer, store.getVy(), n);
+                write(channel, buffer, store.getAx(), n);
+                write(channel, buffer, store.getAy(), n);
+                write(channel, buffer, store.getRadius(), n);
+                write(channel, buffer, store.getWeight(), n);
+                if (neighborList != null)
+                {
+                    write(channel, buffer, neighborList.getReferenceX(), n);
+                    write(channel, buffer, neighborList.getReferenceY(), n);
+                }
+                flush(channel, buffer);
+                channel.force(true);
+            }
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            try
+            {
+                Files.deleteIfExists(temporary);
+            }
+            catch (IOException cleanup)
+            {
+                e.addSuppressed(cleanup);
+            }
+            throw e;
+        }
+        forceDirectory(path.toAbsolutePath().getParent());
+    }
+
+    /*
+     * Make a rename in a directory durable. Some platforms, Windows among
+     * them, cannot open a directory, the rename is then left to the system
+     */
+    private static void forceDirectory (Path directory) throws IOException
+    {
+        FileChannel channel;
+        try
+        {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        }
+        catch (IOException e)
+        {
+            return;
+        }
+        try
+        {
+            channel.force(true);
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    /**
+     * Rebuild a unit cell from a checkpoint, with its worker pool and its
+     * neighbour list if it had them
+     * @param path The checkpoint path
+     * @return The unit cell, ready to continue
+     * @throws IOException If the checkpoint cannot be read or is invalid
+     */
+    public static UnitCell read (Path path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.limit(0);
+            fill(channel, buffer, 56);
+            int version = buffer.getLong() == MAGIC ? buffer.getInt() : -1;
+            if (version != 1 && version != VERSION)
+            {
+                throw new IOException("Not a checkpoint " + path);
+            }
+            int n = buffer.getInt();
+            long stepCount = buffer.getLong();
+            double elapsedTime = buffer.getDouble();
+            int flags = buffer.getInt();
+            double skin = buffer.getDouble();
+            /* Version 1 only had fixed steps, and no time step before the configuration */
+            double timeStep = version == 1 ? 0 : buffer.getDouble();
+            byte[] encoded = new byte[buffer.getInt()];
+            fill(channel, buffer, encoded.length);
+            buffer.get(encoded);
+            SimulationConfig config = decode(encoded);
+            if (config.getParticleCount() != n)
+            {
+                throw new IOException("Inconsistent checkpoint " + path);
+            }
+            if (version == 1)
+            {
+                timeStep = config.getDt();
+            }
+            if ((flags & NEIGHBOR_LIST) == 0)
+            {
+                /* The run binned the particles each step, whatever skin its configuration held */
+                config = config.with(SimulationConfig.NEIGHBOR_SKIN, "0");
+            }
+
+            /* The saved positions are the placement, none of the configuration runs */
+            final double[] x = new double[n];
+            final double[] y = new double[n];
+            read(channel, buffer, x, n);
+            read(channel, buffer, y, n);
+            UnitCell unitCell = new UnitCell(config, new Placement() {
+                @Override
+                public double place (double[] px, double[] py, int count, double boxWidth, SplittableRandom random)
+                {
+                    System.arraycopy(x, 0, px, 0, count);
+                    System.arraycopy(y, 0, py, 0, count);
+                    return 0;
+                }
+            });
+            ParticleStore store = unitCell.getStore();
+            read(channel, buffer, store.getVx(), n);
+            read(channel, buffer, store.getVy(), n);
+            read(channel, buffer, store.getAx(), n);
+            read(channel, buffer, store.getAy(), n);
+            read(channel, buffer, store.getRadius(), n);
+            read(channel, buffer, store.getWeight(), n);
+            unitCell.restore(stepCount, elapsedTime, timeStep);
+
+            if ((flags & ENGINE) != 0)
+            {
+                unitCell.useWorkerPool(config.getThreadCount());
+            }
+            if ((flags & NEIGHBOR_LIST) != 0)
+            {
+                /* Built from the saved references, the list is the one the run was using */
+                double[] referenceX = new double[n];
+                double[] referenceY = new double[n];
+                read(channel, buffer, referenceX, n);
+                read(channel, buffer, referenceY, n);
+                unitCell.enableNeighborList(skin);
+                unitCell.getNeighborList().build(referenceX, referenceY, n);
+            }
+            return unitCell;
+        }
+    }
+
+    private static void write (FileChannel channel, ByteBuffer buffer, double[] values, int n) throws IOException
+    {
+        for (int done = 0; done < n; )
+        {
+            if (buffer.remaining() < 8)
+            {
+                flush(channel, buffer);
+            }
+            int count = Math.min(n - done, buffer.remaining() / 8);
+            buffer.asDoubleBuffer().put(values, done, count);
+            buffer.position(buffer.position() + 8 * count);
+            done += count;
+        }
+    }
+
+    private static void flush (FileChannel channel, ByteBuffer buffer) throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static void read (FileChannel channel, ByteBuffer buffer, double[] values, int n) throws IOException
+    {
+        for (int done = 0; done < n; )
+        {
+            if (buffer.remaining() < 8)
+            {
+                fill(channel, buffer, 8);
+            }
+            int count = Math.min(n - done, buffer.remaining() / 8);
+            buffer.asDoubleBuffer().get(values, done, count);
+            buffer.position(buffer.position() + 8 * count);
+            done += count;
+        }
+    }
+
+    /* Make at least the given number of bytes available, keeping the unread ones */
+    private static void fill (FileChannel channel, ByteBuffer buffer, int bytes) throws IOException
+    {
+        buffer.compact();
+        while (buffer.position() < bytes)
+        {
+            if (channel.read(buffer) < 0)
+            {
+                throw new IOException("Truncated checkpoint");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static byte[] encode (SimulationConfig config)
+    {
+        Properties properties = config.toProperties();
+        List<String> keys = new ArrayList<String>(properties.stringPropertyNames());
+        Collections.sort(keys);
+        StringBuilder text = new StringBuilder();
+        for (String key : keys)
+        {
+            text.append(key).append('=').append(properties.getProperty(key)).append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static SimulationConfig decode (byte[] encoded) throws IOException
+    {
+        Properties properties = new Properties();
+        properties.load(new StringReader(new String(encoded, StandardCharsets.UTF_8)));
+        return new SimulationConfig(properties);
+    }
+}
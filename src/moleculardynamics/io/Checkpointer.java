@@ -0,0 +1,98 @@
+package moleculardynamics.io;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import moleculardynamics.physics.UnitCell;
+
+
+/**
+ * Checkpointer
+ * Writes a checkpoint of a unit cell every given number of steps, every
+ * given wall-clock interval, or both, whichever comes first
+ */
+public class Checkpointer
+{
+    private final Path path;
+    private final long everySteps;
+    private final long everyNanos;
+    private long lastStep;
+    private long lastTime;
+    private int written;
+    private double lastSeconds;
+
+
+    /**
+     * Create a checkpointer
+     * @param path The checkpoint path, overwritten by each checkpoint
+     * @param everySteps The step interval, 0 for none
+     * @param everySeconds The wall-clock interval, 0 for none
+     * @param unitCell The unit cell, whose current step starts both intervals
+     */
+    public Checkpointer (Path path, long everySteps, double everySeconds, UnitCell unitCell)
+    {
+        this.path = path;
+        this.everySteps = everySteps;
+        this.everyNanos = (long) (everySeconds * 1e9);
+        this.lastStep = unitCell.getStepCount();
+        this.lastTime = System.nanoTime();
+    }
+
+    /**
+     * @param step The current step
+     * @return The number of steps that can run before the next checkpoint is due
+     */
+    public long stepsUntilDue (long step)
+    {
+        return everySteps > 0 ? Math.max(1, lastStep + everySteps - step) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Write a checkpoint if one of the intervals has elapsed
+     * @param unitCell The unit cell, between two steps
+     * @return Whether a checkpoint was written
+     * @throws IOException If the checkpoint cannot be written
+     */
+    public boolean update (UnitCell unitCell) throws IOException
+    {
+        long now = System.nanoTime();
+        boolean due = (everySteps > 0 && unitCell.getStepCount() - lastStep >= everySteps)
+            || (everyNanos > 0 && now - lastTime >= everyNanos);
+        if (due)
+        {
+            write(unitCell);
+        }
+        return due;
+    }
+
+    /**
+     * Write a checkpoint now and restart both intervals
+     * @param unitCell The unit cell, between two steps
+     * @throws IOException If the checkpoint cannot be written
+     */
+    public void write (UnitCell unitCell) throws IOException
+    {
+        long start = System.nanoTime();
+        Checkpoint.write(unitCell, path);
+        lastStep = unitCell.getStepCount();
+        lastTime = System.nanoTime();
+        lastSeconds = (lastTime - start) / 1e9;
+        written++;
+    }
+
+    /**
+     * @return The number of checkpoints written
+     */
+    public int getWritten ()
+    {
+        return written;
+    }
+
+    /**
+     * @return The duration of the last checkpoint in seconds
+     */
+    public double getLastSeconds ()
+    {
+        return lastSeconds;
+    }
+}
@@ -0,0 +1,73 @@
+package moleculardynamics.io;
+
+
+/**
+ * Snapshot
+ * A copy of the positions and velocities at one step, owned by a
+ * SnapshotPipeline and reused from one frame to the next
+ */
+public final class Snapshot
+{
+    private final double[] x;
+    private final double[] y;
+    private final double[] vx;
+    private final double[] vy;
+    private long step;
+    private double time;
+
+
+    /**
+     * Create an empty snapshot
+     * @param particles The number of particles
+     */
+    Snapshot (int particles)
+    {
+        x = new double[particles];
+        y = new double[particles];
+        vx = new double[particles];
+        vy = new double[particles];
+    }
+
+    /*
+     * Copy the current state of the particles
+     */
+    void copy (long step, double time, double[] x, double[] y, double[] vx, double[] vy)
+    {
+        this.step = step;
+        this.time = time;
+        System.arraycopy(x, 0, this.x, 0, this.x.length);
+        System.arraycopy(y, 0, this.y, 0, this.y.length);
+        System.arraycopy(vx, 0, this.vx, 0, this.vx.length);
+        System.arraycopy(vy, 0, this.vy, 0, this.vy.length);
+    }
+
+    public long getStep ()
+    {
+        return step;
+    }
+
+    public double getTime ()
+    {
+        return time;
+    }
+
+    public double[] getX ()
+    {
+        return x;
+    }
+
+    public double[] getY ()
+    {
+        return y;
+    }
+
+    public double[] getVx ()
+    {
+        return vx;
+    }
+
+    public double[] getVy ()
+    {
+        return vy;
+    }
+}
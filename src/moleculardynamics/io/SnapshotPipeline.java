@@ -0,0 +1,297 @@
+package moleculardynamics.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+
+import moleculardynamics.physics.ParticleStore;
+
+
+/**
+ * Snapshot pipeline
+ * Moves the output off the step: the step only copies the state into a free
+ * slot of a preallocated ring, and a dedicated consumer thread hands the
+ * filled slots to a sink. When the consumer falls behind and no slot is free,
+ * the policy decides: wait for a slot, drop the oldest pending snapshot, or
+ * skip the new one so that the output is sampled at the rate of the sink.
+ * Offering a snapshot allocates nothing. Once the consumer failed, whatever
+ * the failure, the pipeline is failed: offer and close throw the failure
+ * instead of waiting for a consumer that is gone
+ */
+public class SnapshotPipeline implements Closeable
+{
+    /**
+     * What to do with a new snapshot when every slot is in use
+     */
+    public enum Policy
+    {
+        /* Wait for the consumer, nothing is lost */
+        BLOCK,
+        /* Replace the oldest snapshot not yet consumed */
+        DROP_OLDEST,
+        /* Skip the new snapshot */
+        SAMPLE
+    }
+
+    private final int stride;
+    private final Policy policy;
+    private final SnapshotSink sink;
+    private final Thread consumer;
+
+    /* Slots guarded by this, each one is in exactly one deque or held by a thread */
+    private final ArrayDeque<Snapshot> free;
+    private final ArrayDeque<Snapshot> ready;
+    private boolean closed;
+    private Throwable failure;
+
+    private volatile long offered;
+    private volatile long dropped;
+    private volatile long written;
+
+
+    /**
+     * Create a pipeline and start its consumer thread
+     * @param particles The number of particles of every snapshot
+     * @param slots The number of snapshot buffers, at least 2
+     * @param stride Only the steps that are a multiple of the stride are offered
+     * @param policy What to do when the consumer falls behind
+     * @param sink The consumer of the snapshots
+     */
+    public SnapshotPipeline (int particles, int slots, int stride, Policy policy, SnapshotSink sink)
+    {
+        if (slots < 2 || stride <= 0)
+        {
+            throw new IllegalArgumentException("Invalid pipeline: " + slots + " slots, stride " + stride);
+        }
+        this.stride = stride;
+        this.policy = policy;
+        this.sink = sink;
+        this.free = new ArrayDeque<Snapshot>(slots);
+        this.ready = new ArrayDeque<Snapshot>(slots);
+        for (int s = 0; s < slots; s++)
+        {
+            free.add(new Snapshot(particles));
+        }
+        consumer = new Thread(new Runnable() {
+            public void run() {
+                consume();
+            }
+        }, "Snapshots");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * Copy the current state if the step is a multiple of the stride
+     * @param step The step number
+     * @param time The simulated time
+     * @param store The particle state, read from its current buffers
+     * @return Whether the snapshot was queued
+     * @throws IOException If the consumer failed to write an earlier snapshot
+     * @throws IllegalStateException If the pipeline is closed
+     */
+    public boolean offer (long step, double time, ParticleStore store) throws IOException
+    {
+        synchronized (this)
+        {
+            if (closed)
+            {
+                throw new IllegalStateException("Snapshot pipeline closed");
+            }
+        }
+        if (step % stride != 0)
+        {
+            return false;
+        }
+        offered++;
+        Snapshot slot = acquire();
+        if (slot == null)
+        {
+            dropped++;
+            return false;
+        }
+        slot.copy(step, time, store.getX(), store.getY(), store.getVx(), store.getVy());
+        synchronized (this)
+        {
+            if (closed || failure != null)
+            {
+                /* Closed or failed while copying, the consumer may be gone */
+                free.addLast(slot);
+                checkFailure();
+                throw new IllegalStateException("Snapshot pipeline closed");
+            }
+            ready.addLast(slot);
+            notifyAll();
+        }
+        return true;
+    }
+
+    /* A free slot, or null when the new snapshot is to be skipped */
+    private synchronized Snapshot acquire () throws IOException
+    {
+        while (true)
+        {
+            checkFailure();
+            if (closed)
+            {
+                throw new IllegalStateException("Snapshot pipeline closed");
+            }
+            Snapshot slot = free.pollFirst();
+            if (slot != null || policy == Policy.SAMPLE)
+            {
+                return slot;
+            }
+            if (policy == Policy.DROP_OLDEST && !ready.isEmpty())
+            {
+                dropped++;
+                return ready.pollFirst();
+            }
+            try
+            {
+                wait();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+
+    private void consume ()
+    {
+        while (true)
+        {
+            Snapshot slot;
+            synchronized (this)
+            {
+                while (ready.isEmpty() && !closed)
+                {
+                    try
+                    {
+                        wait();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        fail(new InterruptedIOException("Snapshot consumer interrupted"));
+                        return;
+                    }
+                }
+                if (ready.isEmpty())
+                {
+                    return;
+                }
+                slot = ready.pollFirst();
+            }
+
+            try
+            {
+                sink.accept(slot);
+                written++;
+            }
+            catch (Throwable e)
+            {
+                synchronized (this)
+                {
+                    free.addLast(slot);
+                }
+                fail(e);
+                return;
+            }
+
+            synchronized (this)
+            {
+                free.addLast(slot);
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Write the pending snapshots and stop the consumer thread. The sink is
+     * left open
+     * @throws IOException If the consumer failed to write a snapshot
+     */
+    @Override
+    public void close () throws IOException
+    {
+        synchronized (this)
+        {
+            closed = true;
+            notifyAll();
+        }
+        try
+        {
+            consumer.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this)
+        {
+            checkFailure();
+        }
+    }
+
+    /* Mark the pipeline failed and wake the waiting producers, the consumer stops */
+    private synchronized void fail (Throwable e)
+    {
+        if (failure == null)
+        {
+            failure = e;
+        }
+        notifyAll();
+    }
+
+    /* Throw the failure of the consumer, if any, as it was thrown */
+    private void checkFailure () throws IOException
+    {
+        if (failure instanceof IOException)
+        {
+            throw (IOException) failure;
+        }
+        if (failure instanceof RuntimeException)
+        {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error)
+        {
+            throw (Error) failure;
+        }
+        if (failure != null)
+        {
+            throw new IOException("Snapshot consumer failed", failure);
+        }
+    }
+
+    /**
+     * @return The number of snapshots offered on a stride step
+     */
+    public long getOffered ()
+    {
+        return offered;
+    }
+
+    /**
+     * @return The number of snapshots lost because the consumer fell behind
+     */
+    public long getDropped ()
+    {
+        return dropped;
+    }
+
+    /**
+     * @return The number of snapshots handed to the sink
+     */
+    public long getWritten ()
+    {
+        return written;
+    }
+
+    public Policy getPolicy ()
+    {
+        return policy;
+    }
+}
@@ -0,0 +1,18 @@
+package moleculardynamics.io;
+
+import java.io.IOException;
+
+
+/**
+ * Snapshot sink
+ * Consumes the snapshots of a SnapshotPipeline on its consumer thread
+ */
+public interface SnapshotSink
+{
+    /**
+     * Encode or write one snapshot. The snapshot is reused once this returns
+     * @param snapshot The snapshot
+     * @throws IOException If the snapshot cannot be written
+     */
+    void accept (Snapshot snapshot) throws IOException;
+}
@@ -0,0 +1,165 @@
+package moleculardynamics.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Binary trajectory reader
+ * Reads the files of TrajectoryWriter, mapping each requested frame into
+ * memory. Files that were not closed are read up to their last whole frame.
+ * With an adaptive time step, getDt() is only the initial one and getTime()
+ * gives the time of each frame
+ */
+public class TrajectoryReader implements Closeable
+{
+    private final FileChannel channel;
+    private final int particles;
+    private final int stride;
+    private final int frameCount;
+    private final double boxWidth;
+    private final double dt;
+    private final boolean adaptiveDt;
+    private final long[] offsets;
+
+
+    /**
+     * Open a trajectory file
+     * @param path The file path
+     * @throws IOException If the file cannot be read or is not a trajectory
+     */
+    public TrajectoryReader (Path path) throws IOException
+    {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, TrajectoryWriter.HEADER_BYTES)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getLong(0) != TrajectoryWriter.MAGIC || header.getInt(8) != TrajectoryWriter.VERSION)
+        {
+            channel.close();
+            throw new IOException("Not a trajectory file " + path);
+        }
+        particles = header.getInt(12);
+        stride = header.getInt(16);
+        long indexOffset = header.getLong(24);
+        boxWidth = header.getDouble(32);
+        dt = header.getDouble(40);
+        adaptiveDt = (header.getInt(48) & TrajectoryWriter.ADAPTIVE_DT) != 0;
+        if (particles < 0 || TrajectoryWriter.frameBytes(particles) > Integer.MAX_VALUE)
+        {
+            channel.close();
+            throw new IOException("Invalid particle count " + particles + " in " + path);
+        }
+
+        long frameBytes = TrajectoryWriter.frameBytes(particles);
+        if (indexOffset > 0)
+        {
+            frameCount = header.getInt(20);
+            offsets = new long[frameCount];
+            ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, 8L * frameCount)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            for (int f = 0; f < frameCount; f++)
+            {
+                offsets[f] = index.getLong(8 * f);
+            }
+        }
+        else
+        {
+            frameCount = (int) ((channel.size() - TrajectoryWriter.HEADER_BYTES) / frameBytes);
+            offsets = new long[frameCount];
+            for (int f = 0; f < frameCount; f++)
+            {
+                offsets[f] = TrajectoryWriter.HEADER_BYTES + f * frameBytes;
+            }
+        }
+    }
+
+    /**
+     * Read one frame into the given arrays
+     * @param frame The frame number, from 0
+     * @param x The positions on x, or null
+     * @param y The positions on y, or null
+     * @param vx The velocities on x, or null
+     * @param vy The velocities on y, or null
+     * @return The step number of the frame
+     * @throws IOException If the frame cannot be read
+     */
+    public long read (int frame, float[] x, float[] y, float[] vx, float[] vy) throws IOException
+    {
+        final int n = particles;
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offsets[frame],
+            TrajectoryWriter.frameBytes(n));
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        get(buffer, 16, x, n);
+        get(buffer, 16 + 4 * n, y, n);
+        get(buffer, 16 + 8 * n, vx, n);
+        get(buffer, 16 + 12 * n, vy, n);
+        return buffer.getLong(0);
+    }
+
+    /**
+     * @param frame The frame number, from 0
+     * @return The simulated time of the frame
+     * @throws IOException If the frame cannot be read
+     */
+    public double getTime (int frame) throws IOException
+    {
+        return channel.map(FileChannel.MapMode.READ_ONLY, offsets[frame], 16).order(ByteOrder.LITTLE_ENDIAN).getDouble(8);
+    }
+
+    private static void get (ByteBuffer buffer, int offset, float[] values, int n)
+    {
+        if (values != null)
+        {
+            buffer.position(offset);
+            buffer.asFloatBuffer().get(values, 0, n);
+        }
+    }
+
+    @Override
+    public void close () throws IOException
+    {
+        channel.close();
+    }
+
+    public int getParticles ()
+    {
+        return particles;
+    }
+
+    public int getStride ()
+    {
+        return stride;
+    }
+
+    public int getFrameCount ()
+    {
+        return frameCount;
+    }
+
+    public double getBoxWidth ()
+    {
+        return boxWidth;
+    }
+
+    /**
+     * @return The time step, the initial one when it is adaptive
+     */
+    public double getDt ()
+    {
+        return dt;
+    }
+
+    /**
+     * @return Whether the time step varies between the frames
+     */
+    public boolean isAdaptiveDt ()
+    {
+        return adaptiveDt;
+    }
+}
@@ -0,0 +1,218 @@
+package moleculardynamics.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import moleculardynamics.physics.ParticleStore;
+
+
+/**
+ * Binary trajectory writer
+ * Writes sampled frames of positions and velocities to a little-endian file
+ * through a FileChannel and one reused direct buffer. The file has a fixed
+ * header, fixed-size frames and an index of the frame offsets at the end:
+ *
+ *   header   magic, version, particles, stride, frames, index offset,
+ *            box width, dt, flags                               (64 bytes)
+ *   frame    step (long), time (double), x[n], y[n], vx[n], vy[n] (floats)
+ *   index    offset of each frame (longs)
+ *
+ * The frame count and the index offset are written by close(). A file that
+ * was not closed can still be read, its frames are counted from its length.
+ * With an adaptive time step the ADAPTIVE_DT flag is set and the header dt
+ * is only the initial one: the time of a frame is the one it holds.
+ * As a sink it writes the snapshots of a SnapshotPipeline, off the step
+ */
+public class TrajectoryWriter implements Closeable, SnapshotSink
+{
+    public static final long MAGIC = 0x4D445452414A3031L;
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 64;
+    /** Header flag: the time step varies, dt is nominal */
+    public static final int ADAPTIVE_DT = 1;
+
+    private final FileChannel channel;
+    private final ByteBuffer frame;
+    private final int particles;
+    private final int stride;
+    private long[] offsets = new long[64];
+    private int frameCount;
+    private long position = HEADER_BYTES;
+
+
+    /**
+     * Create a trajectory file, replacing any existing one
+     * @param path The file path
+     * @param particles The number of particles of every frame
+     * @param boxWidth The box width, kept in the header
+     * @param dt The time step, kept in the header
+     * @param adaptiveDt Whether the time step varies, dt being the initial one
+     * @param stride Only the steps that are a multiple of the stride are written
+     * @throws IOException If the file cannot be created
+     */
+    public TrajectoryWriter (Path path, int particles, double boxWidth, double dt, boolean adaptiveDt, int stride)
+        throws IOException
+    {
+        if (stride <= 0)
+        {
+            throw new IllegalArgumentException("Invalid stride " + stride);
+        }
+        if (particles < 0 || frameBytes(particles) > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("Invalid particle count " + particles + ", a frame must fit a buffer");
+        }
+        this.particles = particles;
+        this.stride = stride;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+        this.frame = ByteBuffer.allocateDirect((int) frameBytes(particles)).order(ByteOrder.LITTLE_ENDIAN);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putLong(MAGIC).putInt(VERSION).putInt(particles).putInt(stride).putInt(0).putLong(0);
+        header.putDouble(boxWidth).putDouble(dt).putInt(adaptiveDt ? ADAPTIVE_DT : 0);
+        header.clear();
+        writeFully(header, 0);
+    }
+
+    /**
+     * @param particles The number of particles
+     * @return The size of one frame in bytes
+     */
+    public static long frameBytes (int particles)
+    {
+        return 16 + 16L * particles;
+    }
+
+    /**
+     * Write the current state if the step is a multiple of the stride
+     * @param step The step number
+     * @param time The simulated time
+     * @param store The particle state, read from its current buffers
+     * @return Whether a frame was written
+     * @throws IOException If the frame cannot be written
+     */
+    public boolean sample (long step, double time, ParticleStore store) throws IOException
+    {
+        if (step % stride != 0)
+        {
+            return false;
+        }
+        write(step, time, store.getX(), store.getY(), store.getVx(), store.getVy());
+        return true;
+    }
+
+    /**
+     * Write one frame, whatever the stride
+     * @param step The step number
+     * @param time The simulated time
+     * @param x The positions on x
+     * @param y The positions on y
+     * @param vx The velocities on x
+     * @param vy The velocities on y
+     * @throws IOException If the frame cannot be written
+     */
+    public void write (long step, double time, double[] x, double[] y, double[] vx, double[] vy) throws IOException
+    {
+        final ByteBuffer frame = this.frame;
+        final int n = particles;
+        frame.clear();
+        frame.putLong(0, step);
+        frame.putDouble(8, time);
+        put(frame, 16, x, n);
+        put(frame, 16 + 4 * n, y, n);
+        put(frame, 16 + 8 * n, vx, n);
+        put(frame, 16 + 12 * n, vy, n);
+
+        if (frameCount == offsets.length)
+        {
+            offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+        }
+        offsets[frameCount++] = position;
+        writeFully(frame, position);
+        position += frame.capacity();
+    }
+
+    /**
+     * Write one snapshot as a frame, whatever the stride
+     * @param snapshot The snapshot
+     * @throws IOException If the frame cannot be written
+     */
+    @Override
+    public void accept (Snapshot snapshot) throws IOException
+    {
+        write(snapshot.getStep(), snapshot.getTime(), snapshot.getX(), snapshot.getY(), snapshot.getVx(),
+            snapshot.getVy());
+    }
+
+    private static void put (ByteBuffer frame, int offset, double[] values, int n)
+    {
+        for (int i = 0; i < n; i++)
+        {
+            frame.putFloat(offset + 4 * i, (float) values[i]);
+        }
+    }
+
+    private void writeFully (ByteBuffer buffer, long at) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            at += channel.write(buffer, at);
+        }
+    }
+
+    /**
+     * Write the frame index, complete the header and close the file
+     * @throws IOException If the index cannot be written
+     */
+    @Override
+    public void close () throws IOException
+    {
+        if (!channel.isOpen())
+        {
+            return;
+        }
+        try
+        {
+            ByteBuffer index = ByteBuffer.allocate(8 * frameCount).order(ByteOrder.LITTLE_ENDIAN);
+            for (int f = 0; f < frameCount; f++)
+            {
+                index.putLong(offsets[f]);
+            }
+            index.flip();
+            writeFully(index, position);
+
+            ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(frameCount).putLong(position);
+            header.flip();
+            writeFully(header, 20);
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    public int getFrameCount ()
+    {
+        return frameCount;
+    }
+
+    public int getStride ()
+    {
+        return stride;
+    }
+
+    /**
+     * @return The number of bytes written so far, header and frames
+     */
+    public long getBytesWritten ()
+    {
+        return position;
+    }
+}
@@ -0,0 +1,69 @@
+package moleculardynamics.maths;
+
+
+/**
+ * Running statistics
+ * Mean and variance of a series of values, updated one value at a time
+ * with Welford's algorithm, without keeping the values
+ */
+public class RunningStatistics
+{
+    private long count;
+    private double mean;
+    private double m2;
+
+
+    /**
+     * Add one value
+     * @param value The value
+     */
+    public void add (double value)
+    {
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+    }
+
+    /**
+     * Forget every value
+     */
+    public void clear ()
+    {
+        count = 0;
+        mean = 0;
+        m2 = 0;
+    }
+
+    public long getCount ()
+    {
+        return count;
+    }
+
+    public double getMean ()
+    {
+        return mean;
+    }
+
+    /**
+     * @return The sample variance, 0 below two values
+     */
+    public double getVariance ()
+    {
+        return count > 1 ? m2 / (count - 1) : 0;
+    }
+
+    /**
+     * @return The sample standard deviation
+     */
+    public double getStandardDeviation ()
+    {
+        return Math.sqrt(getVariance());
+    }
+
+    @Override
+    public String toString ()
+    {
+        return String.format("%.6g +- %.3g (%d)", mean, getStandardDeviation(), count);
+    }
+}
@@ -69,6 +69,54 @@ public class Vector2D
         this.y *= k;
     }
 
+    /**
+     * Set both coordinates of the vector
+     * @param x The new X
+     * @param y The new Y
+     * @return This vector
+     */
+    public Vector2D set (double x, double y)
+    {
+        this.x = x;
+        this.y = y;
+        return this;
+    }
+
+    /**
+     * Copy another vector into the vector
+     * @param v The vector to copy
+     * @return This vector
+     */
+    public Vector2D set (Vector2D v)
+    {
+        return set(v.getX(), v.getY());
+    }
+
+    /**
+     * Add the vector v multiplied by the constant k to the vector
+     * @param v The other vector
+     * @param k The constant
+     * @return This vector
+     */
+    public Vector2D addScaled (Vector2D v, double k)
+    {
+        this.x += v.getX() * k;
+        this.y += v.getY() * k;
+        return this;
+    }
+
+    /**
+     * Returns the squared distance to another vector, without a square root
+     * @param v The other vector
+     * @return The squared distance
+     */
+    public double distanceSquared (Vector2D v)
+    {
+        double dx = this.x - v.getX();
+        double dy = this.y - v.getY();
+        return dx * dx + dy * dy;
+    }
+
     /**
      * @return The vector norm
      */
@@ -84,7 +132,7 @@ public class Vector2D
      */
     public double norm (Vector2D v)
     {
-        return Math.sqrt(Math.pow(this.x - v.getX(), 2) + Math.pow(this.y - v.getY(), 2));
+        return Math.sqrt(distanceSquared(v));
     }
 
     /**
@@ -98,6 +146,18 @@ public class Vector2D
         return new Vector2D(a.getX() + b.getX(), a.getY() + b.getY());
     }
 
+    /**
+     * Add a vector with another into an existing vector
+     * @param a The first vector
+     * @param b The other vector
+     * @param out The vector receiving the result, may be a or b
+     * @return The out vector
+     */
+    public static Vector2D add (Vector2D a, Vector2D b, Vector2D out)
+    {
+        return out.set(a.getX() + b.getX(), a.getY() + b.getY());
+    }
+
     /**
      * Substract a vector with another and returns a newly allocated vector
      * @param a The first vector
@@ -109,6 +169,18 @@ public class Vector2D
         return new Vector2D(a.getX() - b.getX(), a.getY() - b.getY());
     }
 
+    /**
+     * Substract a vector with another into an existing vector
+     * @param a The first vector
+     * @param b The other vector
+     * @param out The vector receiving the result, may be a or b
+     * @return The out vector
+     */
+    public static Vector2D sub (Vector2D a, Vector2D b, Vector2D out)
+    {
+        return out.set(a.getX() - b.getX(), a.getY() - b.getY());
+    }
+
     /**
      * Multiply a vector with the constant k and returns a newly allocated vector
      * @param v The vector
@@ -119,6 +191,18 @@ public class Vector2D
         return new Vector2D(v.getX() * k, v.getY() * k);
     }
 
+    /**
+     * Multiply a vector with the constant k into an existing vector
+     * @param v The vector
+     * @param k The constant
+     * @param out The vector receiving the result, may be v
+     * @return The out vector
+     */
+    public static Vector2D mult_scal (Vector2D v, double k, Vector2D out)
+    {
+        return out.set(v.getX() * k, v.getY() * k);
+    }
+
     /**
      * Compute the opposite of a vector and returns a newly allocated vector
      * @param v The vector
@@ -137,7 +221,7 @@ public class Vector2D
      */
     public static double norm(Vector2D a, Vector2D b)
     {
-        return Math.sqrt(Math.pow(b.getX() - a.getX(), 2) + Math.pow(b.getY() - a.getX(), 2));
+        return a.norm(b);
     }
     
 
@@ -0,0 +1,225 @@
+package moleculardynamics.physics;
+
+import java.util.Arrays;
+
+
+/**
+ * Linked-cell list
+ * Bins particles into a square grid of cells at least one cutoff wide, so that
+ * every pair closer than the cutoff lies in the same or in adjacent cells.
+ * The particles of a cell are chained by decreasing index. Several threads
+ * can bin in parts: each part chains a range of particles into cells of its
+ * own, then the chains of the parts are linked cell by cell, which gives the
+ * same chains as a serial build
+ */
+public class CellList
+{
+    private final double boxWidth;
+    private final double cutoff;
+    private final int cellsPerSide;
+    private final double cellsPerUnit;
+
+    /* First particle of each cell, -1 when empty */
+    private final int[] head;
+    /* Next particle in the same cell, -1 at the end of the chain */
+    private int[] next;
+
+    /* First and last particle of each part in each cell, for the builds in parts */
+    private int[][] partHeads = new int[0][];
+    private int[][] partTails = new int[0][];
+    private int parts;
+
+
+    /**
+     * Create a cell list covering a square box
+     * @param boxWidth The box width
+     * @param cutoff The interaction cutoff
+     */
+    public CellList (double boxWidth, double cutoff)
+    {
+        this.boxWidth = boxWidth;
+        this.cutoff = cutoff;
+        this.cellsPerSide = Math.max(1, (int) (boxWidth / cutoff));
+        this.cellsPerUnit = cellsPerSide / boxWidth;
+        this.head = new int[cellsPerSide * cellsPerSide];
+        this.next = new int[0];
+    }
+
+    /**
+     * Empty every cell and make room for n particles
+     * @param n The number of particles that will be inserted
+     */
+    public void clear (int n)
+    {
+        if (next.length < n)
+        {
+            next = new int[n];
+        }
+        Arrays.fill(head, -1);
+    }
+
+    /**
+     * Empty every cell and insert particles 0 to n - 1
+     * @param x The X positions
+     * @param y The Y positions
+     * @param n The number of particles
+     */
+    public void build (double[] x, double[] y, int n)
+    {
+        clear(n);
+        for (int i = 0; i < n; i++)
+        {
+            insert(i, x[i], y[i]);
+        }
+    }
+
+    /**
+     * Make room for a build in parts, before binning every part with
+     * binPart and linking every cell with linkParts
+     * @param parts The number of parts
+     * @param n The number of particles
+     */
+    public void prepareParts (int parts, int n)
+    {
+        if (next.length < n)
+        {
+            next = new int[n];
+        }
+        if (partHeads.length < parts)
+        {
+            partHeads = new int[parts][head.length];
+            partTails = new int[parts][head.length];
+        }
+        this.parts = parts;
+    }
+
+    /**
+     * Chain a range of particles into the cells of one part. The parts
+     * are disjoint and by increasing index, and may be binned concurrently
+     * @param part The part index
+     * @param x The X positions
+     * @param y The Y positions
+     * @param from The first particle of the part
+     * @param to The particle after the last one
+     */
+    public void binPart (int part, double[] x, double[] y, int from, int to)
+    {
+        final int[] heads = partHeads[part];
+        final int[] tails = partTails[part];
+        Arrays.fill(heads, -1);
+        for (int i = from; i < to; i++)
+        {
+            int cell = cellOf(x[i], y[i]);
+            if (heads[cell] < 0)
+            {
+                tails[cell] = i;
+            }
+            next[i] = heads[cell];
+            heads[cell] = i;
+        }
+    }
+
+    /**
+     * Link the chains of every part in a range of cells, once every part
+     * is binned. Disjoint ranges may be linked concurrently
+     * @param fromCell The first cell
+     * @param toCell The cell after the last one
+     */
+    public void linkParts (int fromCell, int toCell)
+    {
+        for (int cell = fromCell; cell < toCell; cell++)
+        {
+            int first = -1;
+            for (int part = 0; part < parts; part++)
+            {
+                int partHead = partHeads[part][cell];
+                if (partHead >= 0)
+                {
+                    next[partTails[part][cell]] = first;
+                    first = partHead;
+                }
+            }
+            head[cell] = first;
+        }
+    }
+
+    /**
+     * Insert a particle in the cell containing its position
+     * @param i The particle index
+     * @param x The particle X
+     * @param y The particle Y
+     */
+    public void insert (int i, double x, double y)
+    {
+        int cell = cellOf(x, y);
+        next[i] = head[cell];
+        head[cell] = i;
+    }
+
+    /**
+     * Returns the cell index on one axis. Positions outside the box are
+     * clamped to the border cells, which keeps neighbours adjacent
+     * @param coordinate The coordinate
+     * @return The cell index on the axis
+     */
+    public int cellCoordinate (double coordinate)
+    {
+        int c = (int) (coordinate * cellsPerUnit);
+        if (c < 0)
+        {
+            return 0;
+        }
+        return c >= cellsPerSide ? cellsPerSide - 1 : c;
+    }
+
+    /**
+     * @param x The X position
+     * @param y The Y position
+     * @return The index of the cell containing the position
+     */
+    public int cellOf (double x, double y)
+    {
+        return cellCoordinate(y) * cellsPerSide + cellCoordinate(x);
+    }
+
+    /**
+     * @param cell The cell index
+     * @return The first particle of the cell, or -1 when empty
+     */
+    public int getHead (int cell)
+    {
+        return head[cell];
+    }
+
+    /**
+     * @param i The particle index
+     * @return The next particle in the same cell, or -1
+     */
+    public int getNext (int i)
+    {
+        return next[i];
+    }
+
+    /**
+     * @return The number of cells
+     */
+    public int getCellCount ()
+    {
+        return head.length;
+    }
+
+    public int getCellsPerSide ()
+    {
+        return cellsPerSide;
+    }
+
+    public double getBoxWidth ()
+    {
+        return boxWidth;
+    }
+
+    public double getCutoff ()
+    {
+        return cutoff;
+    }
+}
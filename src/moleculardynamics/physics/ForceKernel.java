@@ -0,0 +1,487 @@
+package moleculardynamics.physics;
+
+import moleculardynamics.Parameters;
+import moleculardynamics.SimulationConfig;
+import moleculardynamics.potential.PairPotential;
+import moleculardynamics.potential.Potentials;
+
+
+/**
+ * Force kernel
+ * Computes particle accelerations from the walls, the gravity and the
+ * pair interactions, reading positions from primitive arrays.
+ * The parameters are copied from the configuration into final fields, and
+ * the pair potential is built once from the configuration
+ */
+public class ForceKernel
+{
+    /* Own cell, then the four neighbour cells that make each cell pair appear once */
+    private static final int[] FORWARD_X = { 0, 1, -1, 0, 1 };
+    private static final int[] FORWARD_Y = { 0, 0, 1, 1, 1 };
+    /* Own cell, then the four other neighbour cells */
+    private static final int[] BACKWARD_X = { 0, -1, -1, 0, 1 };
+    private static final int[] BACKWARD_Y = { 0, 0, -1, -1, -1 };
+
+    /* Every pair force in full */
+    public static final int ALL_PAIRS = 0;
+    /* The share of the pair forces switched on below the split distance, for the inner steps */
+    public static final int NEAR_PAIRS = 1;
+    /* The remaining share of the pair forces, for the outer steps */
+    public static final int FAR_PAIRS = 2;
+
+    private final double boxWidth;
+    private final double wallStiffness;
+    private final double gravity;
+    private final PairPotential pairPotential;
+    private final double cutoffSquared;
+    /* Potential at the cutoff, subtracted so that the pair energy is continuous */
+    private final double potentialShift;
+    /* Pair forces switch from near to far between these distances */
+    private final double switchStart;
+    private final double switchWidth;
+    private final double switchStartSquared;
+    private final double splitSquared;
+
+
+    /**
+     * Create the kernel of a configuration. The pair loops of the Lennard-Jones
+     * potential run on the Vector API when the configuration asks for it, uses
+     * a neighbour list and a single time step, and the VectorForceKernel of
+     * the src-vector sources is on the class path with the jdk.incubator.vector
+     * module resolved, and on the scalar loops of this class otherwise,
+     * which are the only ones the vector kernel would run. With auto, the
+     * vector loops also need four lanes and a cutoff of VECTOR_CUTOFF radii,
+     * below which they were measured barely faster
+     * @param config The simulation configuration
+     * @return The kernel
+     */
+    public static ForceKernel create (SimulationConfig config)
+    {
+        if (!config.getKernel().equals("scalar") && config.getPotential().equals("lj")
+            && config.getTable().equals("none") && config.getNeighborSkin() > 0 && config.getRespaSteps() == 1)
+        {
+            try
+            {
+                /* Loaded by name, so that this class links without the incubator module */
+                ForceKernel kernel = (ForceKernel) Class.forName("moleculardynamics.physics.VectorForceKernel")
+                    .getConstructor(SimulationConfig.class).newInstance(config);
+                if (config.getKernel().equals("vector") || kernel.getLanes() >= 4
+                    && config.getForceCutoff() >= Parameters.VECTOR_CUTOFF * config.getParticleRadius())
+                {
+                    return kernel;
+                }
+            }
+            catch (ReflectiveOperationException | LinkageError e)
+            {
+                /* Not compiled in, or the module is not resolved, the scalar loops do the same work */
+            }
+        }
+        return new ForceKernel(config);
+    }
+
+    /**
+     * Create a kernel for a configuration
+     * @param config The simulation configuration
+     */
+    public ForceKernel (SimulationConfig config)
+    {
+        this.boxWidth = config.getBoxWidth();
+        this.wallStiffness = config.getWallStiffness();
+        this.gravity = config.getGravity();
+        this.pairPotential = Potentials.create(config);
+        this.cutoffSquared = config.getForceCutoff() * config.getForceCutoff();
+        this.potentialShift = pairPotential.energy(cutoffSquared);
+        this.switchWidth = config.getRespaHealing();
+        this.switchStart = config.getRespaSplit() - switchWidth;
+        this.switchStartSquared = switchStart * switchStart;
+        this.splitSquared = config.getRespaSplit() * config.getRespaSplit();
+    }
+
+    /**
+     * Compute the acceleration of particle i at a given position, reading
+     * every particle and writing only the entry i of the output arrays
+     * @param i The particle index
+     * @param px The X position of particle i
+     * @param py The Y position of particle i
+     * @param x The X positions of the other particles
+     * @param y The Y positions of the other particles
+     * @param cellList The cell list binned on x, y, used when neighborList is null
+     * @param neighborList A full Verlet neighbour list, or null
+     * @param ax Output X accelerations
+     * @param ay Output Y accelerations
+     */
+    public void accelerate (int i, double px, double py, double[] x, double[] y,
+        CellList cellList, NeighborList neighborList, double[] ax, double[] ay)
+    {
+        final double cutoffSquared = this.cutoffSquared;
+        final PairPotential pairPotential = this.pairPotential;
+        double fx = wall(px);
+        double fy = wall(py) - gravity;
+
+        if (neighborList != null)
+        {
+            int[] neighbors = neighborList.getNeighbors();
+            for (int k = neighborList.getStart(i); k < neighborList.getEnd(i); k++)
+            {
+                int j = neighbors[k];
+                double dx = px - x[j];
+                double dy = py - y[j];
+                double distanceSquared = dx * dx + dy * dy;
+                if (distanceSquared < cutoffSquared)
+                {
+                    double f = pairPotential.forceOverDistance(distanceSquared);
+                    fx += f * dx;
+                    fy += f * dy;
+                }
+            }
+        }
+        else
+        {
+            final int cellsPerSide = cellList.getCellsPerSide();
+            int cx = cellList.cellCoordinate(px);
+            int cy = cellList.cellCoordinate(py);
+            for (int ny = Math.max(0, cy - 1); ny <= Math.min(cellsPerSide - 1, cy + 1); ny++)
+            {
+                for (int nx = Math.max(0, cx - 1); nx <= Math.min(cellsPerSide - 1, cx + 1); nx++)
+                {
+                    for (int j = cellList.getHead(ny * cellsPerSide + nx); j >= 0; j = cellList.getNext(j))
+                    {
+                        double dx = px - x[j];
+                        double dy = py - y[j];
+                        double distanceSquared = dx * dx + dy * dy;
+                        if (j != i && distanceSquared < cutoffSquared)
+                        {
+                            double f = pairPotential.forceOverDistance(distanceSquared);
+                            fx += f * dx;
+                            fy += f * dy;
+                        }
+                    }
+                }
+            }
+        }
+        ax[i] = fx;
+        ay[i] = fy;
+    }
+
+    /**
+     * Accumulate the pair forces on the particles of a chunk [from, to[,
+     * writing the buffers in that range only, so that chunks can share them.
+     * A pair inside the chunk is visited once and applied to both particles
+     * (Newton's 3rd law). A pair across two chunks is visited from both and
+     * each applies the force to its own particle. With the cell list, the
+     * pairs across chunks are found in the whole stencil, unless the chunk
+     * holds every particle. With the neighbour list, they are the ones the
+     * list keeps under both particles
+     * @param from The first particle
+     * @param to The particle after the last one
+     * @param x The X positions
+     * @param y The Y positions
+     * @param cellList The cell list binned on x, y, used when neighborList is null
+     * @param neighborList A Verlet neighbour list split into parts, one of which is the chunk, or null
+     * @param fx X force buffer, written in the chunk only
+     * @param fy Y force buffer, written in the chunk only
+     */
+    public void accumulatePairs (int from, int to, double[] x, double[] y,
+        CellList cellList, NeighborList neighborList, double[] fx, double[] fy)
+    {
+        accumulatePairs(from, to, x, y, cellList, neighborList, fx, fy, null);
+    }
+
+    /**
+     * Accumulate the pair forces as above, and optionally the pair potential
+     * energy and virial of the visited pairs, and their distance histogram
+     * @param from The first particle
+     * @param to The particle after the last one
+     * @param x The X positions
+     * @param y The Y positions
+     * @param cellList The cell list binned on x, y, used when neighborList is null
+     * @param neighborList A Verlet neighbour list split into parts, one of which is the chunk, or null
+     * @param fx X force buffer, written in the chunk only
+     * @param fy Y force buffer, written in the chunk only
+     * @param sums Sums of the calling task to add the energy, the virial and the distances to, or null
+     */
+    public void accumulatePairs (int from, int to, double[] x, double[] y,
+        CellList cellList, NeighborList neighborList, double[] fx, double[] fy, PairSums sums)
+    {
+        accumulatePairs(from, to, x, y, cellList, neighborList, fx, fy, sums, ALL_PAIRS);
+    }
+
+    /**
+     * Accumulate one group of the pair forces as above. The near group only
+     * visits the pairs closer than the split distance. The energy, the virial
+     * and the distances are those of the full pair forces, so they are only
+     * complete when observed on the all or far groups
+     * @param from The first particle
+     * @param to The particle after the last one
+     * @param x The X positions
+     * @param y The Y positions
+     * @param cellList The cell list binned on x, y, used when neighborList is null
+     * @param neighborList A Verlet neighbour list split into parts, one of which is the chunk, or null
+     * @param fx X force buffer, written in the chunk only
+     * @param fy Y force buffer, written in the chunk only
+     * @param sums Sums of the calling task to add the energy, the virial and the distances to, or null
+     * @param group ALL_PAIRS, NEAR_PAIRS or FAR_PAIRS
+     */
+    public void accumulatePairs (int from, int to, double[] x, double[] y,
+        CellList cellList, NeighborList neighborList, double[] fx, double[] fy, PairSums sums, int group)
+    {
+        final double cutoffSquared = group == NEAR_PAIRS ? splitSquared : this.cutoffSquared;
+        final boolean switched = group != ALL_PAIRS;
+        final boolean near = group == NEAR_PAIRS;
+        final PairPotential pairPotential = this.pairPotential;
+        final boolean observe = sums != null;
+        final boolean energies = observe && sums.energies;
+        final long[] histogram = observe ? sums.histogram : null;
+        final double binInverse = observe ? sums.binInverse : 0;
+        double energy = 0;
+        double virial = 0;
+
+        if (neighborList != null)
+        {
+            int[] neighbors = neighborList.getNeighbors();
+            for (int i = from; i < to; i++)
+            {
+                final double px = x[i];
+                final double py = y[i];
+                double fxi = 0;
+                double fyi = 0;
+                for (int k = neighborList.getStart(i); k < neighborList.getEnd(i); k++)
+                {
+                    int j = neighbors[k];
+                    double dx = px - x[j];
+                    double dy = py - y[j];
+                    double distanceSquared = dx * dx + dy * dy;
+                    if (distanceSquared < cutoffSquared)
+                    {
+                        double f = pairPotential.forceOverDistance(distanceSquared);
+                        double share = switched ? f * share(distanceSquared, near) : f;
+                        fxi += share * dx;
+                        fyi += share * dy;
+                        /* A lower neighbour is in an earlier chunk, which counts the pair */
+                        if (j > i)
+                        {
+                            if (j < to)
+                            {
+                                fx[j] -= share * dx;
+                                fy[j] -= share * dy;
+                            }
+                            if (observe)
+                            {
+                                if (energies)
+                                {
+                                    energy += potential(distanceSquared);
+                                    virial += f * distanceSquared;
+                                }
+                                if (histogram != null)
+                                {
+                                    int bin = (int) (Math.sqrt(distanceSquared) * binInverse);
+                                    if (bin < histogram.length)
+                                    {
+                                        histogram[bin]++;
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+                fx[i] += fxi;
+                fy[i] += fyi;
+            }
+            if (observe)
+            {
+                sums.potential += energy;
+                sums.virial += virial;
+            }
+            return;
+        }
+
+        final int cellsPerSide = cellList.getCellsPerSide();
+        final boolean partial = from > 0 || to < x.length;
+        for (int i = from; i < to; i++)
+        {
+            final double px = x[i];
+            final double py = y[i];
+            int cx = cellList.cellCoordinate(px);
+            int cy = cellList.cellCoordinate(py);
+            double fxi = 0;
+            double fyi = 0;
+
+            /* Particles after i in its own cell, then every particle of the forward half of the stencil */
+            int j = cellList.getNext(i);
+            for (int c = 0; c < 5; c++)
+            {
+                if (c > 0)
+                {
+                    int nx = cx + FORWARD_X[c];
+                    int ny = cy + FORWARD_Y[c];
+                    if (nx < 0 || nx >= cellsPerSide || ny >= cellsPerSide)
+                    {
+                        continue;
+                    }
+                    j = cellList.getHead(ny * cellsPerSide + nx);
+                }
+                for (; j >= 0; j = cellList.getNext(j))
+                {
+                    double dx = px - x[j];
+                    double dy = py - y[j];
+                    double distanceSquared = dx * dx + dy * dy;
+                    if (distanceSquared < cutoffSquared)
+                    {
+                        double f = pairPotential.forceOverDistance(distanceSquared);
+                        double share = switched ? f * share(distanceSquared, near) : f;
+                        fxi += share * dx;
+                        fyi += share * dy;
+                        if (j >= from && j < to)
+                        {
+                            fx[j] -= share * dx;
+                            fy[j] -= share * dy;
+                        }
+                        if (observe)
+                        {
+                            if (energies)
+                            {
+                                energy += potential(distanceSquared);
+                                virial += f * distanceSquared;
+                            }
+                            if (histogram != null)
+                            {
+                                int bin = (int) (Math.sqrt(distanceSquared) * binInverse);
+                                if (bin < histogram.length)
+                                {
+                                    histogram[bin]++;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+
+            /* Particles of other chunks seeing i in their forward half: the force on i, counted by them */
+            for (int c = partial ? 0 : 5; c < 5; c++)
+            {
+                int nx = cx + BACKWARD_X[c];
+                int ny = cy + BACKWARD_Y[c];
+                if (nx < 0 || nx >= cellsPerSide || ny < 0)
+                {
+                    continue;
+                }
+                /* In its own cell, the particles before i in the chain */
+                int end = c == 0 ? i : -1;
+                for (j = cellList.getHead(ny * cellsPerSide + nx); j != end; j = cellList.getNext(j))
+                {
+                    if (j >= from && j < to)
+                    {
+                        continue;
+                    }
+                    double dx = px - x[j];
+                    double dy = py - y[j];
+                    double distanceSquared = dx * dx + dy * dy;
+                    if (distanceSquared < cutoffSquared)
+                    {
+                        double f = pairPotential.forceOverDistance(distanceSquared);
+                        double share = switched ? f * share(distanceSquared, near) : f;
+                        fxi += share * dx;
+                        fyi += share * dy;
+                    }
+                }
+            }
+            fx[i] += fxi;
+            fy[i] += fyi;
+        }
+        if (observe)
+        {
+            sums.potential += energy;
+            sums.virial += virial;
+        }
+    }
+
+    /*
+     * Share of a pair force in the near or the far group: 1 or 0 away from
+     * the switch, and a smooth cubic S(x) = 1 + x^2 (2x - 3) of the distance
+     * across it, so that both groups stay conservative
+     */
+    private double share (double distanceSquared, boolean near)
+    {
+        double inner;
+        if (distanceSquared <= switchStartSquared)
+        {
+            inner = 1;
+        }
+        else if (distanceSquared >= splitSquared)
+        {
+            inner = 0;
+        }
+        else
+        {
+            double t = (Math.sqrt(distanceSquared) - switchStart) / switchWidth;
+            inner = 1 + t * t * (2 * t - 3);
+        }
+        return near ? inner : 1 - inner;
+    }
+
+    /**
+     * Pair potential, shifted to zero at the cutoff:
+     * U = U(distance) - U(cutoff)
+     * @param distanceSquared The squared distance between the particles
+     * @return The pair potential energy
+     */
+    public double potential (double distanceSquared)
+    {
+        return pairPotential.energy(distanceSquared) - potentialShift;
+    }
+
+    /**
+     * @param coordinate The position on one axis
+     * @return The potential energy of the wall on that axis
+     */
+    public double wallPotential (double coordinate)
+    {
+        double overshoot = coordinate < 0 ? coordinate : (coordinate > boxWidth ? coordinate - boxWidth : 0);
+        return 0.5 * wallStiffness * overshoot * overshoot;
+    }
+
+    /**
+     * @param coordinate The position on one axis
+     * @return The wall force on that axis, zero inside the box
+     */
+    public double wall (double coordinate)
+    {
+        if (coordinate < 0)
+        {
+            return -coordinate * wallStiffness;
+        }
+        return coordinate > boxWidth ? wallStiffness * (boxWidth - coordinate) : 0;
+    }
+
+    /**
+     * @return The number of pairs evaluated at once by the pair loops
+     */
+    public int getLanes ()
+    {
+        return 1;
+    }
+
+    /**
+     * @return The name of the pair loops, with their lane count
+     */
+    public String getName ()
+    {
+        return getLanes() == 1 ? "scalar" : "vector x" + getLanes();
+    }
+
+    /**
+     * @return The pair potential, exact or tabulated
+     */
+    public PairPotential getPairPotential ()
+    {
+        return pairPotential;
+    }
+
+    /**
+     * @return The gravity acceleration, pointing down
+     */
+    public double getGravity ()
+    {
+        return gravity;
+    }
+}
@@ -0,0 +1,369 @@
+package moleculardynamics.physics;
+
+import java.util.Arrays;
+
+
+/**
+ * Verlet neighbour list
+ * Keeps, for each particle, the particles closer than the cutoff plus a skin.
+ * A full list keeps every neighbour. A list split into parts, the contiguous
+ * ranges of particles the worker pool computes, keeps a pair of one part
+ * once, under its lower particle, and a pair across two parts under both
+ * particles, so that each part only applies forces to its own particles.
+ * With a single part it is a half list. The list is built part by part, by
+ * one thread or several, and stays valid until some particle has moved more
+ * than half the skin since it was built
+ */
+public class NeighborList
+{
+    private final double cutoff;
+    private final double skin;
+    /* 0 for a full list */
+    private final int parts;
+    private final CellList cellList;
+
+    /* Neighbours of particle i are neighbors[offsets[i]] to neighbors[offsets[i + 1] - 1] */
+    private int[] offsets;
+    private int[] neighbors;
+
+    /* Positions at the last build */
+    private double[] referenceX;
+    private double[] referenceY;
+
+    /* Neighbours found by each part, before they are placed in the list */
+    private final int[][] partNeighbors;
+    private final int[] partCounts;
+    private final int[] partBases;
+
+    private long steps;
+    private long rebuilds;
+
+
+    /**
+     * Create an empty neighbour list
+     * @param boxWidth The box width
+     * @param cutoff The interaction cutoff
+     * @param skin The extra distance kept around the cutoff
+     * @param parts The number of parts, 0 to keep every neighbour
+     */
+    public NeighborList (double boxWidth, double cutoff, double skin, int parts)
+    {
+        this.cutoff = cutoff;
+        this.skin = skin;
+        this.parts = parts;
+        this.cellList = new CellList(boxWidth, cutoff + skin);
+        this.offsets = new int[1];
+        this.neighbors = new int[0];
+        this.referenceX = new double[0];
+        this.referenceY = new double[0];
+        int searched = Math.max(1, parts);
+        this.partNeighbors = new int[searched][16];
+        this.partCounts = new int[searched];
+        this.partBases = new int[searched];
+    }
+
+    /**
+     * @param part The part index
+     * @param parts The number of parts
+     * @param n The number of particles
+     * @return The first particle of the part, the parts splitting the
+     *         particles into contiguous ranges of nearly equal sizes
+     */
+    public static int partStart (int part, int parts, int n)
+    {
+        return (int) ((long) n * part / parts);
+    }
+
+    /**
+     * Rebuild the list if it is stale, and count the step
+     * @param x The current X positions
+     * @param y The current Y positions
+     * @param n The number of particles
+     * @return True if the list has been rebuilt
+     */
+    public boolean update (double[] x, double[] y, int n)
+    {
+        steps++;
+        if (isStale(x, y, n))
+        {
+            build(x, y, n);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Count a step whose list is checked and rebuilt in parts instead of by update()
+     */
+    public void countStep ()
+    {
+        steps++;
+    }
+
+    /**
+     * @param x The current X positions
+     * @param y The current Y positions
+     * @param n The number of particles
+     * @return True if some particle has moved more than half the skin since the last build
+     */
+    public boolean isStale (double[] x, double[] y, int n)
+    {
+        return referenceX.length != n || isStale(x, y, 0, n);
+    }
+
+    /**
+     * @param x The current X positions
+     * @param y The current Y positions
+     * @param from The first particle checked
+     * @param to The particle after the last one
+     * @return True if some particle of the range has moved more than half the skin since the last build
+     */
+    public boolean isStale (double[] x, double[] y, int from, int to)
+    {
+        final double limitSquared = 0.25 * skin * skin;
+        for (int i = from; i < to; i++)
+        {
+            double dx = x[i] - referenceX[i];
+            double dy = y[i] - referenceY[i];
+            if (dx * dx + dy * dy > limitSquared)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Build the list from the current positions, one part after the other
+     * @param x The current X positions
+     * @param y The current Y positions
+     * @param n The number of particles
+     */
+    public void build (double[] x, double[] y, int n)
+    {
+        prepareParts(n);
+        for (int part = 0; part < partCounts.length; part++)
+        {
+            binPart(part, x, y);
+        }
+        linkCells(0, getCellCount());
+        for (int part = 0; part < partCounts.length; part++)
+        {
+            searchPart(part);
+        }
+        countParts();
+        for (int part = 0; part < partCounts.length; part++)
+        {
+            placePart(part);
+        }
+    }
+
+    /**
+     * Start a build in parts, run in this order by one thread or, each step
+     * on distinct parts or cells, by several: binPart for every part,
+     * linkCells for every cell, searchPart for every part, countParts once,
+     * then placePart for every part
+     * @param n The number of particles
+     */
+    public void prepareParts (int n)
+    {
+        if (referenceX.length != n)
+        {
+            referenceX = new double[n];
+            referenceY = new double[n];
+            offsets = new int[n + 1];
+        }
+        cellList.prepareParts(partCounts.length, n);
+    }
+
+    /**
+     * Record the positions of one part and bin them
+     * @param part The part index
+     * @param x The current X positions
+     * @param y The current Y positions
+     */
+    public void binPart (int part, double[] x, double[] y)
+    {
+        int n = referenceX.length;
+        int from = partStart(part, partCounts.length, n);
+        int to = partStart(part + 1, partCounts.length, n);
+        System.arraycopy(x, from, referenceX, from, to - from);
+        System.arraycopy(y, from, referenceY, from, to - from);
+        cellList.binPart(part, referenceX, referenceY, from, to);
+    }
+
+    /**
+     * Link the cells binned by every part
+     * @param fromCell The first cell
+     * @param toCell The cell after the last one
+     */
+    public void linkCells (int fromCell, int toCell)
+    {
+        cellList.linkParts(fromCell, toCell);
+    }
+
+    /**
+     * @return The number of cells the parts are binned into
+     */
+    public int getCellCount ()
+    {
+        return cellList.getCellCount();
+    }
+
+    /**
+     * Find the neighbours of the particles of one part, offsets relative to the part
+     * @param part The part index
+     */
+    public void searchPart (int part)
+    {
+        int n = referenceX.length;
+        int from = partStart(part, partCounts.length, n);
+        int to = partStart(part + 1, partCounts.length, n);
+        /* Within a part, a pair is kept under its lower particle, unless the list is full */
+        int lowest = parts == 0 ? n : from;
+        final double radiusSquared = (cutoff + skin) * (cutoff + skin);
+        final int cellsPerSide = cellList.getCellsPerSide();
+        int[] found = partNeighbors[part];
+        int count = 0;
+        for (int i = from; i < to; i++)
+        {
+            offsets[i] = count;
+            int cx = cellList.cellCoordinate(referenceX[i]);
+            int cy = cellList.cellCoordinate(referenceY[i]);
+            for (int ny = Math.max(0, cy - 1); ny <= Math.min(cellsPerSide - 1, cy + 1); ny++)
+            {
+                for (int nx = Math.max(0, cx - 1); nx <= Math.min(cellsPerSide - 1, cx + 1); nx++)
+                {
+                    for (int j = cellList.getHead(ny * cellsPerSide + nx); j >= 0; j = cellList.getNext(j))
+                    {
+                        double dx = referenceX[i] - referenceX[j];
+                        double dy = referenceY[i] - referenceY[j];
+                        if (j != i && (j > i || j < lowest) && dx * dx + dy * dy < radiusSquared)
+                        {
+                            if (count == found.length)
+                            {
+                                found = Arrays.copyOf(found, 2 * count);
+                            }
+                            found[count++] = j;
+                        }
+                    }
+                }
+            }
+        }
+        partNeighbors[part] = found;
+        partCounts[part] = count;
+    }
+
+    /**
+     * Place the parts one after the other in the list, once every part is searched
+     */
+    public void countParts ()
+    {
+        int total = 0;
+        for (int part = 0; part < partCounts.length; part++)
+        {
+            partBases[part] = total;
+            total += partCounts[part];
+        }
+        if (neighbors.length < total)
+        {
+            neighbors = new int[Math.max(total, 2 * neighbors.length)];
+        }
+        offsets[referenceX.length] = total;
+        rebuilds++;
+    }
+
+    /**
+     * Copy the neighbours of one part into the list
+     * @param part The part index
+     */
+    public void placePart (int part)
+    {
+        int n = referenceX.length;
+        int from = partStart(part, partCounts.length, n);
+        int to = partStart(part + 1, partCounts.length, n);
+        int base = partBases[part];
+        System.arraycopy(partNeighbors[part], 0, neighbors, base, partCounts[part]);
+        for (int i = from; i < to; i++)
+        {
+            offsets[i] += base;
+        }
+    }
+
+    /**
+     * @param i The particle index
+     * @return Index in getNeighbors() of the first neighbour of particle i
+     */
+    public int getStart (int i)
+    {
+        return offsets[i];
+    }
+
+    /**
+     * @param i The particle index
+     * @return Index in getNeighbors() after the last neighbour of particle i
+     */
+    public int getEnd (int i)
+    {
+        return offsets[i + 1];
+    }
+
+    public int[] getNeighbors ()
+    {
+        return neighbors;
+    }
+
+    /**
+     * @return The number of parts, 0 for a full list
+     */
+    public int getParts ()
+    {
+        return parts;
+    }
+
+    /**
+     * @return The positions on x the list was built from
+     */
+    public double[] getReferenceX ()
+    {
+        return referenceX;
+    }
+
+    /**
+     * @return The positions on y the list was built from
+     */
+    public double[] getReferenceY ()
+    {
+        return referenceY;
+    }
+
+    public double getSkin ()
+    {
+        return skin;
+    }
+
+    public long getSteps ()
+    {
+        return steps;
+    }
+
+    public long getRebuilds ()
+    {
+        return rebuilds;
+    }
+
+    /**
+     * @return Average number of steps between two rebuilds
+     */
+    public double getStepsPerRebuild ()
+    {
+        return rebuilds == 0 ? 0 : (double) steps / rebuilds;
+    }
+
+    @Override
+    public String toString ()
+    {
+        return "NeighborList [skin=" + skin + ", steps=" + steps + ", rebuilds=" + rebuilds
+            + ", steps/rebuild=" + getStepsPerRebuild() + "]";
+    }
+}
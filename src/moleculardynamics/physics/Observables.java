@@ -0,0 +1,157 @@
+package moleculardynamics.physics;
+
+import moleculardynamics.maths.RunningStatistics;
+
+
+/**
+ * Observables
+ * The thermodynamic quantities of the last evaluated step, and their
+ * running mean and variance over every evaluated step. The sums come from
+ * the force and integration passes, no extra pass over the pairs is made.
+ * In two dimensions with kB = 1:
+ *   temperature = kinetic energy / N
+ *   pressure = (N T + virial / 2) / area
+ * where the virial sums r.F over the pairs, the walls being the container
+ */
+public class Observables
+{
+    /**
+     * Quantities recorded at each evaluated step
+     */
+    public enum Quantity
+    {
+        KINETIC_ENERGY,
+        POTENTIAL_ENERGY,
+        TOTAL_ENERGY,
+        TEMPERATURE,
+        PRESSURE
+    }
+
+    private final int every;
+    private final double[] values = new double[Quantity.values().length];
+    private final RunningStatistics[] statistics = new RunningStatistics[values.length];
+    private volatile long step = -1;
+    private double time;
+
+
+    /**
+     * Create observables evaluated every given number of steps
+     * @param every The number of steps between two evaluations
+     */
+    public Observables (int every)
+    {
+        if (every <= 0)
+        {
+            throw new IllegalArgumentException("Invalid interval " + every);
+        }
+        this.every = every;
+        for (int q = 0; q < statistics.length; q++)
+        {
+            statistics[q] = new RunningStatistics();
+        }
+    }
+
+    /**
+     * @param step A step number
+     * @return Whether the observables are evaluated at that step
+     */
+    public boolean isDue (long step)
+    {
+        return step % every == 0;
+    }
+
+    /**
+     * Record one evaluated step
+     * @param step The step number
+     * @param time The simulated time
+     * @param sums The sums of every task
+     * @param particles The number of particles
+     * @param area The area of the box
+     */
+    public synchronized void record (long step, double time, PairSums sums, int particles, double area)
+    {
+        double kinetic = sums.getKinetic();
+        double potential = sums.getPotential() + sums.getExternal();
+        double temperature = particles > 0 ? kinetic / particles : 0;
+        set(Quantity.KINETIC_ENERGY, kinetic);
+        set(Quantity.POTENTIAL_ENERGY, potential);
+        set(Quantity.TOTAL_ENERGY, kinetic + potential);
+        set(Quantity.TEMPERATURE, temperature);
+        set(Quantity.PRESSURE, (particles * temperature + 0.5 * sums.getVirial()) / area);
+        this.time = time;
+        this.step = step;
+    }
+
+    private void set (Quantity quantity, double value)
+    {
+        values[quantity.ordinal()] = value;
+        statistics[quantity.ordinal()].add(value);
+    }
+
+    /**
+     * Forget the running statistics, for instance after equilibration
+     */
+    public synchronized void clearStatistics ()
+    {
+        for (RunningStatistics s : statistics)
+        {
+            s.clear();
+        }
+    }
+
+    /**
+     * @param quantity The quantity
+     * @return Its value at the last evaluated step
+     */
+    public synchronized double get (Quantity quantity)
+    {
+        return values[quantity.ordinal()];
+    }
+
+    /**
+     * @param quantity The quantity
+     * @return Its running mean over the evaluated steps
+     */
+    public synchronized double getMean (Quantity quantity)
+    {
+        return statistics[quantity.ordinal()].getMean();
+    }
+
+    /**
+     * @param quantity The quantity
+     * @return Its running variance over the evaluated steps
+     */
+    public synchronized double getVariance (Quantity quantity)
+    {
+        return statistics[quantity.ordinal()].getVariance();
+    }
+
+    /**
+     * @return The last evaluated step, -1 before the first one
+     */
+    public long getStep ()
+    {
+        return step;
+    }
+
+    public synchronized double getTime ()
+    {
+        return time;
+    }
+
+    public int getEvery ()
+    {
+        return every;
+    }
+
+    @Override
+    public synchronized String toString ()
+    {
+        StringBuilder result = new StringBuilder("Observables [step=").append(step);
+        for (Quantity quantity : Quantity.values())
+        {
+            result.append(", ").append(quantity).append('=').append(statistics[quantity.ordinal()]);
+        }
+        return result.append(']').toString();
+    }
+}
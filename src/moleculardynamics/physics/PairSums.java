@@ -0,0 +1,90 @@
+package moleculardynamics.physics;
+
+
+/**
+ * Pair sums
+ * Accumulators filled by the force kernel while it visits the pairs, and by
+ * the integrator while it visits the particles, owned by one task. The
+ * energies are summed when requested, the pair distances are binned when a
+ * histogram is attached
+ */
+public class PairSums
+{
+    double potential;
+    double virial;
+    double kinetic;
+    double external;
+
+    boolean energies;
+    long[] histogram;
+    double binInverse;
+
+
+    /**
+     * Choose what the next pass accumulates
+     * @param energies Whether to sum the energies and the virial
+     * @param histogram Pair distance histogram to add to, or null
+     * @param binWidth The bin width of the histogram
+     */
+    public void observe (boolean energies, long[] histogram, double binWidth)
+    {
+        this.energies = energies;
+        this.histogram = histogram;
+        this.binInverse = 1 / binWidth;
+    }
+
+    /**
+     * Reset every energy sum to zero, the histogram is left untouched
+     */
+    public void clear ()
+    {
+        potential = 0;
+        virial = 0;
+        kinetic = 0;
+        external = 0;
+    }
+
+    /**
+     * Add the sums of another task
+     * @param other The other sums
+     */
+    public void add (PairSums other)
+    {
+        potential += other.potential;
+        virial += other.virial;
+        kinetic += other.kinetic;
+        external += other.external;
+    }
+
+    /**
+     * @return The pair potential energy
+     */
+    public double getPotential ()
+    {
+        return potential;
+    }
+
+    /**
+     * @return The pair virial, sum of r.F over the pairs
+     */
+    public double getVirial ()
+    {
+        return virial;
+    }
+
+    /**
+     * @return The kinetic energy
+     */
+    public double getKinetic ()
+    {
+        return kinetic;
+    }
+
+    /**
+     * @return The potential energy of the walls and the gravity
+     */
+    public double getExternal ()
+    {
+        return external;
+    }
+}
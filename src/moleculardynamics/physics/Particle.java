@@ -1,267 +1,235 @@
 package moleculardynamics.physics;
 
-import java.util.concurrent.BrokenBarrierException;
-
-import moleculardynamics.Parameters;
 import moleculardynamics.maths.Vector2D;
 
 
 /**
  * Particle class
- * Particle running asynchronously from each other
+ * Particle running asynchronously from each other.
+ * The particle state lives in the unit cell ParticleStore, a particle is a
+ * view on one index of it
  */
 public class Particle implements Runnable
 {
     private UnitCell unitCell;
-
-    private Vector2D position;
-    private Vector2D newPosition;
-    private Vector2D velocity;
-    private Vector2D newVelocity;
-    private Vector2D acceleration;
-    private Vector2D newAcceleration;
-
-    private double radius;
-    private double weight;
-    
-    private boolean isPaused;
+    private int index;
 
 
     /**
-     * Create a particle with default properties
+     * Create a view on a particle of a unit cell
      * @param unitCell The particle unit cell
+     * @param index The particle index in the unit cell store
      */
-    public Particle (UnitCell unitCell)
+    public Particle (UnitCell unitCell, int index)
     {
         this.unitCell = unitCell;
-        this.position = new Vector2D();
-        this.velocity = new Vector2D();
-        this.acceleration = new Vector2D();
-        this.newPosition = new Vector2D();
-        this.newVelocity = new Vector2D();
-        this.newAcceleration = new Vector2D();
-        this.radius = 1.0;
-        this.weight = 1.0;
+        this.index = index;
     }
 
     /**
-     * Create a particle with initial properties
+     * Create a view on a particle of a unit cell and set its initial properties
      * @param unitCell The particle unit cell
+     * @param index The particle index in the unit cell store
      * @param position Initial position
      * @param velocity Initial velocity
      * @param radius Particle radius
      * @param weight Particle weight
      */
-    public Particle (UnitCell unitCell, Vector2D position, Vector2D velocity, double radius, double weight)
+    public Particle (UnitCell unitCell, int index, Vector2D position, Vector2D velocity, double radius, double weight)
     {
-        this.unitCell = unitCell;
-        this.position = new Vector2D(position);
-        this.velocity = new Vector2D(velocity);
-        this.acceleration = new Vector2D();
-        this.radius = radius;
-        this.weight = weight;
+        this(unitCell, index);
+        setPosition(position);
+        setVelocity(velocity);
+        setAcceleration(new Vector2D());
+        setRadius(radius);
+        setWeight(weight);
     }
 
     /**
-     * Run the particle thread routine
+     * Run the particle thread routine, until the barrier is terminated at the final time
      */
     public void run ()
     {
-    	while(true) {
-    		
-			final double dtOver2 = Parameters.DT * 0.5;
-			final double dtSquaredOver2 = Math.pow(Parameters.DT, 2) * 0.5;
-			// nextPosition = position + (velocity * dt) + (acceleration * 0.5 dt * dt)
-			newPosition = Vector2D.add(getPosition(), 
-					Vector2D.add(Vector2D.mult_scal(getVelocity(), Parameters.DT), Vector2D.mult_scal(getAcceleration(), dtSquaredOver2)));
-		
-			// nextVelocity = velocity + (acceleration * 0.5 * dt)
-			newVelocity = Vector2D.add(getVelocity(),
-					Vector2D.mult_scal(getAcceleration(), dtOver2));
-			
-			computeAccelerations();
-			 
-			newVelocity = Vector2D.add(newVelocity,
-					Vector2D.mult_scal(getAcceleration(), dtOver2));
-    		
-			try {
-				unitCell.getBarrier().await();
-			} catch (InterruptedException | BrokenBarrierException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
-    	}
-    }
-    
-	private void computeAccelerations(){
-		// Check if particles are going outside the box
-		// Initial values
-		Vector2D initialAcceleration = new Vector2D();
-		// Check horizontal position
-		if (getPosition().getX() < 0)
-		{
-
-			initialAcceleration.setX(- getPosition().getX() * Parameters.WALL_STIFFNESS );
-
-		} 
-		else
-		{
-
-			if (getPosition().getX() > Parameters.BOX_WIDTH) {
-
-				initialAcceleration.setX( Parameters.WALL_STIFFNESS * (Parameters.BOX_WIDTH - getPosition().getX()) );
-
-			}
-		}
-
-			// Check vertical position
-			if (getPosition().getY() < 0)
-			{
-
-				initialAcceleration.setY(- getPosition().getY() * Parameters.WALL_STIFFNESS );
-
-			} 
-			else
-			{
-
-				if (getPosition().getY() > Parameters.BOX_WIDTH) {
+    	final int i = index;
+    	boolean running = true;
+    	while(running) {
 
-					initialAcceleration.setY( Parameters.WALL_STIFFNESS * (Parameters.BOX_WIDTH - getPosition().getY()) );
+			ParticleStore store = unitCell.getStore();
+			final double[] x = store.getX(), y = store.getY();
+			final double[] vx = store.getVx(), vy = store.getVy();
+			final double[] ax = store.getAx(), ay = store.getAy();
+			final double[] nextVx = store.getNextVx(), nextVy = store.getNextVy();
 
-				}
-			}
-
-			// Gravity force (vertical force)
-			initialAcceleration.setY(initialAcceleration.getY() - Parameters.GRAVITY);
-
-			
-			// We set initial acceleration vector to the current particle
-			newAcceleration = initialAcceleration;
-
-		// We compute interactions forces using Lennard-Jones potential
-		for (Particle j : unitCell.getParticles()) {
-
-			// We need to use distinct pairs
-			if (!this.equals(j)){
-
-				// Compute distance between pairs
-				double distance = Vector2D.norm(getNewPosition(), j.getPosition());
-
-				// Horizontal and vertical distance
-				double dx = getNewPosition().getX() - j.getPosition().getX();
-				double dy = getNewPosition().getY() - j.getPosition().getY();
-
-				double distanceInv = 1.0 / distance;
-
-				//Compute attractive and repulsive forces
-				double attract = Math.pow(Parameters.PARTICLE_RADIUS * distanceInv, 6);
-				double repul = Math.pow(Parameters.PARTICLE_RADIUS * distanceInv, 12);
+			final double dt = unitCell.getConfig().getDt();
+			final double dtOver2 = dt * 0.5;
+			final double dtSquaredOver2 = dt * dt * 0.5;
+			// nextPosition = position + (velocity * dt) + (acceleration * 0.5 dt * dt)
+			store.getNextX()[i] = x[i] + vx[i] * dt + ax[i] * dtSquaredOver2;
+			store.getNextY()[i] = y[i] + vy[i] * dt + ay[i] * dtSquaredOver2;
 
+			// nextVelocity = velocity + (acceleration * 0.5 * dt)
+			nextVx[i] = vx[i] + ax[i] * dtOver2;
+			nextVy[i] = vy[i] + ay[i] * dtOver2;
 
-				// Force over the distance between particles
-				// F = - 24 * epsilon * [2 * (repul * 1/distance) - (attract * 1/distance)]
-				double fOverDistance = -24 * Parameters.EPSILON * ( 2 * (repul * distanceInv) - (attract * distanceInv) );
+			computeAccelerations(store);
 
-				// Lennard Jones force
-				Vector2D lennardForce = new Vector2D(fOverDistance * dx, fOverDistance * dy);
+			// nextVelocity += nextAcceleration * 0.5 * dt
+			nextVx[i] += store.getNextAx()[i] * dtOver2;
+			nextVy[i] += store.getNextAy()[i] * dtOver2;
 
-				// New accelerations for both particles
-				Vector2D accelerationP = Vector2D.add(getNewAcceleration(), lennardForce);
-				Vector2D accelerationJ = Vector2D.sub(j.getAcceleration(), lennardForce); // Newton's 3rd law
+			running = unitCell.getBarrier().await(i);
+    	}
+    }
 
-				// We set computed values to the particles
-				newAcceleration = accelerationP;
-				j.setNewAcceleration(accelerationJ);
-			}
-		}
+	/*
+	 * Compute the acceleration of this particle at its new position. Only the
+	 * entry of this particle is written, so particle threads never race
+	 */
+	private void computeAccelerations(ParticleStore store){
+		unitCell.getForceKernel().accelerate(index, store.getNextX()[index], store.getNextY()[index], store.getX(), store.getY(),
+				unitCell.getCellList(), unitCell.getNeighborList(), store.getNextAx(), store.getNextAy());
 	}
 
+    /**
+     * @return A copy of the particle position
+     */
     public Vector2D getPosition ()
     {
-        return position;
+        ParticleStore store = unitCell.getStore();
+        return new Vector2D(store.getX()[index], store.getY()[index]);
+    }
+
+    /**
+     * Copy the particle position into an existing vector
+     * @param out The vector receiving the position
+     * @return The out vector
+     */
+    public Vector2D getPosition (Vector2D out)
+    {
+        ParticleStore store = unitCell.getStore();
+        return out.set(store.getX()[index], store.getY()[index]);
     }
 
     public void setPosition (Vector2D position)
     {
-        this.position = position;
+        ParticleStore store = unitCell.getStore();
+        store.getX()[index] = position.getX();
+        store.getY()[index] = position.getY();
     }
 
+    /**
+     * @return A copy of the particle velocity
+     */
     public Vector2D getVelocity ()
     {
-        return velocity;
+        ParticleStore store = unitCell.getStore();
+        return new Vector2D(store.getVx()[index], store.getVy()[index]);
+    }
+
+    /**
+     * Copy the particle velocity into an existing vector
+     * @param out The vector receiving the velocity
+     * @return The out vector
+     */
+    public Vector2D getVelocity (Vector2D out)
+    {
+        ParticleStore store = unitCell.getStore();
+        return out.set(store.getVx()[index], store.getVy()[index]);
     }
 
     public void setVelocity (Vector2D velocity)
     {
-        this.velocity = velocity;
+        ParticleStore store = unitCell.getStore();
+        store.getVx()[index] = velocity.getX();
+        store.getVy()[index] = velocity.getY();
+    }
+
+    /**
+     * @return A copy of the particle acceleration
+     */
+    public Vector2D getAcceleration ()
+    {
+        ParticleStore store = unitCell.getStore();
+        return new Vector2D(store.getAx()[index], store.getAy()[index]);
     }
 
-    public synchronized Vector2D getAcceleration ()
+    /**
+     * Copy the particle acceleration into an existing vector
+     * @param out The vector receiving the acceleration
+     * @return The out vector
+     */
+    public Vector2D getAcceleration (Vector2D out)
     {
-        return acceleration;
+        ParticleStore store = unitCell.getStore();
+        return out.set(store.getAx()[index], store.getAy()[index]);
     }
 
-    public synchronized void setAcceleration (Vector2D acceleration)
+    public void setAcceleration (Vector2D acceleration)
     {
-        this.acceleration = acceleration;
+        ParticleStore store = unitCell.getStore();
+        store.getAx()[index] = acceleration.getX();
+        store.getAy()[index] = acceleration.getY();
     }
 
     public double getRadius ()
     {
-        return radius;
+        return unitCell.getStore().getRadius()[index];
     }
 
     public void setRadius (double radius)
     {
-        this.radius = radius;
+        unitCell.getStore().getRadius()[index] = radius;
     }
 
     public double getWeight ()
     {
-        return weight;
+        return unitCell.getStore().getWeight()[index];
     }
 
     public void setWeight (double weight)
     {
-        this.weight = weight;
+        unitCell.getStore().getWeight()[index] = weight;
     }
 
-    public UnitCell getUnitCell ()
+    /**
+     * @return The particle index in its unit cell
+     */
+    public int getIndex ()
     {
-        return unitCell;
+        return index;
     }
 
-    public void setUnitCell (UnitCell unitCell)
+    public UnitCell getUnitCell ()
     {
-        this.unitCell = unitCell;
+        return unitCell;
     }
-    
-    public synchronized void setNewAcceleration(Vector2D acc){
-    	this.newAcceleration = acc;
+
+    public void setNewAcceleration(Vector2D acc){
+    	ParticleStore store = unitCell.getStore();
+    	store.getNextAx()[index] = acc.getX();
+    	store.getNextAy()[index] = acc.getY();
     }
-    
-    public synchronized Vector2D getNewAcceleration(){
-    	return newAcceleration;
+
+    /**
+     * @return A copy of the acceleration computed for the next step
+     */
+    public Vector2D getNewAcceleration(){
+    	ParticleStore store = unitCell.getStore();
+    	return new Vector2D(store.getNextAx()[index], store.getNextAy()[index]);
     }
-    
-    public synchronized Vector2D getNewPosition(){
-    	return newPosition;
+
+    /**
+     * @return A copy of the position computed for the next step
+     */
+    public Vector2D getNewPosition(){
+    	ParticleStore store = unitCell.getStore();
+    	return new Vector2D(store.getNextX()[index], store.getNextY()[index]);
     }
 
     @Override
     public String toString ()
     {
-        return "Particle [position=" + position + ", velocity=" + velocity
-            + ", acceleration=" + acceleration + ", radius=" + radius + ", weight=" + weight + "]";
-    }
-    
-    public synchronized void update(){
-    	this.acceleration = newAcceleration;
-    	this.position = newPosition;
-    	this.velocity = newVelocity;
-    }
-    
-    public void setPaused(boolean paused) {
-        isPaused = paused;
+        return "Particle [position=" + getPosition() + ", velocity=" + getVelocity()
+            + ", acceleration=" + getAcceleration() + ", radius=" + getRadius() + ", weight=" + getWeight() + "]";
     }
-}
\ No newline at end of file
+}
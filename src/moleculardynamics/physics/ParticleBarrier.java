@@ -0,0 +1,90 @@
+package moleculardynamics.physics;
+
+import java.util.concurrent.Phaser;
+import java.util.function.BooleanSupplier;
+
+
+/**
+ * Particle barrier
+ * Tree of Phasers the particle threads meet on at the end of each step. Each
+ * particle arrives on a leaf of at most a given number of parties, a leaf
+ * arrives on its parent once all its particles have, and the step action runs
+ * once, when the root advances, before any particle is released. Arrivals
+ * then contend on one small phaser each instead of one counter shared by
+ * every particle, and the party count is not bounded by the 65535 parties of
+ * a single Phaser
+ */
+public class ParticleBarrier
+{
+    private final Phaser root;
+    private final Phaser[] leaves;
+    private final int width;
+
+
+    /**
+     * Create a barrier for a number of particles
+     * @param parties The number of particles
+     * @param width The largest number of parties of one phaser
+     * @param action Run once per step by the last arriving particle, returns
+     *        true to terminate the barrier and release the particles for good
+     */
+    public ParticleBarrier (int parties, int width, final BooleanSupplier action)
+    {
+        this.width = width;
+        this.root = new Phaser() {
+            @Override
+            protected boolean onAdvance (int phase, int registeredParties)
+            {
+                return action.getAsBoolean();
+            }
+        };
+
+        leaves = new Phaser[(parties + width - 1) / width];
+        long span = width;
+        while (span < parties)
+        {
+            span *= width;
+        }
+        if (parties > 0)
+        {
+            build(root, 0, parties, span);
+        }
+    }
+
+    /*
+     * Register the particles from..to under a parent, directly when they fit
+     * in one leaf, else through one intermediate phaser per span / width of them
+     */
+    private void build (Phaser parent, int from, int to, long span)
+    {
+        if (to - from <= width)
+        {
+            leaves[from / width] = new Phaser(parent, to - from);
+            return;
+        }
+        long childSpan = span / width;
+        for (long start = from; start < to; start += childSpan)
+        {
+            Phaser child = childSpan == width ? parent : new Phaser(parent);
+            build(child, (int) start, (int) Math.min(to, start + childSpan), childSpan);
+        }
+    }
+
+    /**
+     * Wait until every particle completed the step and the step action ran
+     * @param index The index of the arriving particle
+     * @return False once the barrier is terminated
+     */
+    public boolean await (int index)
+    {
+        return leaves[index / width].arriveAndAwaitAdvance() >= 0;
+    }
+
+    /**
+     * @return True once the step action terminated the barrier
+     */
+    public boolean isTerminated ()
+    {
+        return root.isTerminated();
+    }
+}
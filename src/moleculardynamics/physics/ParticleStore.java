@@ -0,0 +1,155 @@
+package moleculardynamics.physics;
+
+
+/**
+ * Particle store
+ * Holds the state of every particle of a unit cell in primitive arrays, one
+ * array per component. The next-step buffers are written during a step and
+ * swapped with the current ones by commit()
+ */
+public class ParticleStore
+{
+    private final int size;
+
+    private double[] x;
+    private double[] y;
+    private double[] vx;
+    private double[] vy;
+    private double[] ax;
+    private double[] ay;
+
+    private double[] nextX;
+    private double[] nextY;
+    private double[] nextVx;
+    private double[] nextVy;
+    private double[] nextAx;
+    private double[] nextAy;
+
+    private final double[] radius;
+    private final double[] weight;
+
+
+    /**
+     * Create a store of n particles at rest at the origin
+     * @param n The number of particles
+     */
+    public ParticleStore (int n)
+    {
+        this.size = n;
+        this.x = new double[n];
+        this.y = new double[n];
+        this.vx = new double[n];
+        this.vy = new double[n];
+        this.ax = new double[n];
+        this.ay = new double[n];
+        this.nextX = new double[n];
+        this.nextY = new double[n];
+        this.nextVx = new double[n];
+        this.nextVy = new double[n];
+        this.nextAx = new double[n];
+        this.nextAy = new double[n];
+        this.radius = new double[n];
+        this.weight = new double[n];
+    }
+
+    /**
+     * Make the next-step buffers the current state. The old current arrays
+     * become the next-step buffers and are overwritten by the following step
+     */
+    public void commit ()
+    {
+        double[] t;
+        t = x; x = nextX; nextX = t;
+        t = y; y = nextY; nextY = t;
+        t = vx; vx = nextVx; nextVx = t;
+        t = vy; vy = nextVy; nextVy = t;
+        t = ax; ax = nextAx; nextAx = t;
+        t = ay; ay = nextAy; nextAy = t;
+    }
+
+    /**
+     * @return The number of particles
+     */
+    public int size ()
+    {
+        return size;
+    }
+
+    /**
+     * @return Bytes held by the arrays for each particle
+     */
+    public static int bytesPerParticle ()
+    {
+        return 14 * Double.BYTES;
+    }
+
+    public double[] getX ()
+    {
+        return x;
+    }
+
+    public double[] getY ()
+    {
+        return y;
+    }
+
+    public double[] getVx ()
+    {
+        return vx;
+    }
+
+    public double[] getVy ()
+    {
+        return vy;
+    }
+
+    public double[] getAx ()
+    {
+        return ax;
+    }
+
+    public double[] getAy ()
+    {
+        return ay;
+    }
+
+    public double[] getNextX ()
+    {
+        return nextX;
+    }
+
+    public double[] getNextY ()
+    {
+        return nextY;
+    }
+
+    public double[] getNextVx ()
+    {
+        return nextVx;
+    }
+
+    public double[] getNextVy ()
+    {
+        return nextVy;
+    }
+
+    public double[] getNextAx ()
+    {
+        return nextAx;
+    }
+
+    public double[] getNextAy ()
+    {
+        return nextAy;
+    }
+
+    public double[] getRadius ()
+    {
+        return radius;
+    }
+
+    public double[] getWeight ()
+    {
+        return weight;
+    }
+}
@@ -0,0 +1,791 @@
+package moleculardynamics.physics;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import moleculardynamics.SimulationConfig;
+
+
+/**
+ * Worker pool step engine
+ * Splits the particles of a unit cell into one chunk per thread and runs each
+ * velocity Verlet step as parallel loops on a fixed ForkJoinPool: the update
+ * phase moves every particle, the binning phases bin the new positions or
+ * check and rebuild the neighbour list, the force phase accumulates the pair
+ * forces on the particles of each chunk into shared buffers, visiting the
+ * pairs inside a chunk once and those across two chunks from both, and the
+ * reduction phase turns the buffers into the new accelerations. Each phase
+ * ends with a single join.
+ * With several inner steps per step, the integrator is the reversible
+ * multiple time step scheme (RESPA): the near pair forces and the inner
+ * external forces move the particles with a fraction of the step, and the
+ * far pair forces, which vary slowly, only kick the velocities at both ends
+ * of the step. With an adaptive time step, each step first finds the
+ * largest speed and acceleration of the particles and lets a step
+ * controller choose its time step.
+ * Steps run inside the pool and reuse their tasks and buffers, so that a
+ * steady-state step allocates nothing
+ */
+public class PoolEngine
+{
+    private static final int UPDATE = 0;
+    private static final int FORCE = 1;
+    private static final int REDUCE = 2;
+    private static final int STEP = 3;
+    private static final int INNER_UPDATE = 4;
+    private static final int NEAR_FORCE = 5;
+    private static final int NEAR_REDUCE = 6;
+    private static final int FAR_FORCE = 7;
+    private static final int FAR_REDUCE = 8;
+    private static final int LIMITS = 9;
+    private static final int BIN = 10;
+    private static final int LINK = 11;
+    private static final int STALE = 12;
+    private static final int REFERENCE = 13;
+    private static final int SEARCH = 14;
+    private static final int PLACE = 15;
+    /* Spins on the pending chunks before parking, far shorter than a chunk */
+    private static final int SPINS = 256;
+
+    private final UnitCell unitCell;
+    private final ForkJoinPool pool;
+    private final boolean shared;
+    private final Chunk[] chunks;
+    /* Chunks of the running phase not yet computed, and the thread waiting for them */
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile Thread waiter;
+    private final Batch batch;
+
+    /* Pair force accumulators, each chunk writing its own range only, zeroed by the reduction */
+    private final double[] forceX;
+    private final double[] forceY;
+
+    /* The positions binned by the binning phases, into a cell list or a neighbour list */
+    private double[] binX;
+    private double[] binY;
+    private CellList binned;
+    private NeighborList rebuilt;
+
+    /* Observable sums, one per chunk, filled on the steps where the observables are due */
+    private final PairSums[] sums;
+    private final PairSums total = new PairSums();
+    private boolean observing;
+
+    /* Pair distance histograms, one per chunk, for the radial distribution they were created by */
+    private long[][] histograms;
+    private RadialDistribution histogramOwner;
+
+    /* Multiple time stepping: the near pairs are binned at the split distance, the outer accelerations are kept between steps */
+    private final int respaSteps;
+    private final CellList nearCells;
+    private final double[] outerAx;
+    private final double[] outerAy;
+    private final boolean wallsOuter;
+    private final boolean gravityOuter;
+    private boolean outerValid;
+    private boolean firstInner;
+    /* Time by which the reductions advance the velocities */
+    private double kick;
+
+    /* Chooses the time step of each step, or null for the configured one */
+    private final StepController stepController;
+
+
+    /**
+     * Create an engine for a unit cell
+     * @param unitCell The unit cell
+     * @param threads The number of worker threads
+     */
+    public PoolEngine (UnitCell unitCell, int threads)
+    {
+        this(unitCell, new ForkJoinPool(threads), threads, false);
+    }
+
+    /**
+     * Create an engine running on a pool shared with other engines
+     * @param unitCell The unit cell
+     * @param pool The shared pool, left running by shutdown()
+     * @param chunks The number of chunks the particles are split into
+     */
+    public PoolEngine (UnitCell unitCell, ForkJoinPool pool, int chunks)
+    {
+        this(unitCell, pool, chunks, true);
+    }
+
+    private PoolEngine (UnitCell unitCell, ForkJoinPool pool, int chunkCount, boolean shared)
+    {
+        this.unitCell = unitCell;
+        this.pool = pool;
+        this.shared = shared;
+        int n = unitCell.getStore().size();
+        int count = Math.max(1, Math.min(chunkCount, n));
+        this.chunks = new Chunk[count];
+        for (int c = 0; c < count; c++)
+        {
+            /* The ranges of the parts of the neighbour list */
+            chunks[c] = new Chunk(c, NeighborList.partStart(c, count, n), NeighborList.partStart(c + 1, count, n));
+        }
+        this.batch = new Batch();
+        this.forceX = new double[n];
+        this.forceY = new double[n];
+        this.sums = new PairSums[count];
+        for (int c = 0; c < count; c++)
+        {
+            sums[c] = new PairSums();
+        }
+
+        SimulationConfig config = unitCell.getConfig();
+        this.respaSteps = config.getRespaSteps();
+        this.wallsOuter = config.isRespaOuter("walls");
+        this.gravityOuter = config.isRespaOuter("gravity");
+        this.nearCells = respaSteps > 1 ? new CellList(unitCell.getBoxWidth(), config.getRespaSplit()) : null;
+        this.outerAx = respaSteps > 1 ? new double[n] : null;
+        this.outerAy = respaSteps > 1 ? new double[n] : null;
+        this.stepController = config.isAdaptiveDt()
+            ? new StepController(config.getDtMin(), config.getDtMax(), config.getStepDisplacement()) : null;
+    }
+
+    /**
+     * Execute one velocity Verlet step and commit it
+     */
+    public void step ()
+    {
+        run(1);
+    }
+
+    /**
+     * Execute several steps in a row without leaving the pool. Only the
+     * call itself allocates, the steps do not
+     * @param steps The number of steps
+     */
+    public void run (int steps)
+    {
+        submit(STEP, steps);
+    }
+
+    /**
+     * Run the update phase alone, moving every particle to its next
+     * position. Meant for benchmarks, the state is not committed
+     */
+    public void integrate ()
+    {
+        submit(UPDATE, 1);
+    }
+
+    /**
+     * Bin the next positions and run the force and reduction phases alone.
+     * Meant for benchmarks, the state is not committed
+     */
+    public void computeForces ()
+    {
+        submit(FORCE, 1);
+    }
+
+    private void submit (int work, int count)
+    {
+        batch.work = work;
+        batch.count = count;
+        observing = false;
+        if (ForkJoinTask.getPool() == pool)
+        {
+            /* Already on a worker, as in an ensemble task */
+            batch.compute();
+            return;
+        }
+        batch.reinitialize();
+        pool.invoke(batch);
+    }
+
+    /**
+     * Stop the worker threads, unless the pool is shared
+     */
+    public void shutdown ()
+    {
+        if (!shared)
+        {
+            pool.shutdown();
+        }
+    }
+
+    public int getThreads ()
+    {
+        return pool.getParallelism();
+    }
+
+    /**
+     * @return The number of chunks the particles are split into
+     */
+    public int getChunkCount ()
+    {
+        return chunks.length;
+    }
+
+    /**
+     * @return The controller of the adaptive time step, or null when the step is fixed
+     */
+    public StepController getStepController ()
+    {
+        return stepController;
+    }
+
+    /* Runs a number of steps, or of a single part of a step, from a pool thread */
+    @SuppressWarnings("serial")
+    private class Batch extends RecursiveAction
+    {
+        int work;
+        int count;
+
+        @Override
+        protected void compute ()
+        {
+            for (int s = 0; s < count; s++)
+            {
+                if (work == STEP)
+                {
+                    doStep();
+                }
+                else if (work == UPDATE)
+                {
+                    phase(UPDATE);
+                }
+                else
+                {
+                    doForces();
+                }
+            }
+        }
+    }
+
+    private void doStep ()
+    {
+        Observables observables = unitCell.getObservables();
+        RadialDistribution radialDistribution = unitCell.getRadialDistribution();
+        long next = unitCell.getStepCount() + 1;
+        double finalTime = unitCell.getConfig().getTf();
+        boolean running = unitCell.getElapsedTime() < finalTime;
+        boolean energies = observables != null && observables.isDue(next);
+        boolean sampling = radialDistribution != null && radialDistribution.isDue(next);
+        observing = energies || sampling;
+        if (sampling && histogramOwner != radialDistribution)
+        {
+            histograms = new long[chunks.length][];
+            for (int c = 0; c < chunks.length; c++)
+            {
+                histograms[c] = radialDistribution.createHistogram();
+            }
+            histogramOwner = radialDistribution;
+        }
+        if (observing)
+        {
+            for (int c = 0; c < chunks.length; c++)
+            {
+                sums[c].observe(energies, sampling ? histograms[c] : null,
+                    sampling ? radialDistribution.getBinWidth() : 1);
+            }
+        }
+
+        if (stepController != null)
+        {
+            chooseTimeStep();
+        }
+        if (respaSteps > 1)
+        {
+            doRespaStep();
+        }
+        else
+        {
+            phase(UPDATE);
+            doForces();
+        }
+        unitCell.getStore().commit();
+
+        /* Recorded before the step is published, so that its events and frames carry them */
+        double area = unitCell.getBoxWidth() * unitCell.getBoxWidth();
+        if (energies)
+        {
+            total.clear();
+            for (PairSums chunkSums : sums)
+            {
+                total.add(chunkSums);
+            }
+            observables.record(next, unitCell.getElapsedTime() + unitCell.getTimeStep(), total,
+                unitCell.getStore().size(), area);
+        }
+        if (sampling)
+        {
+            radialDistribution.merge(histograms, unitCell.getStore().size(), area);
+        }
+        observing = false;
+        unitCell.stepCompleted();
+        if (running && unitCell.getElapsedTime() >= finalTime)
+        {
+            /* Whether the engine thread, a controller or direct calls run the steps */
+            unitCell.stepsEnded();
+        }
+    }
+
+    /*
+     * Let the controller choose the time step from the largest speed and
+     * acceleration of the current state
+     */
+    private void chooseTimeStep ()
+    {
+        phase(LIMITS);
+        double speedSquared = 0;
+        double accelerationSquared = 0;
+        for (Chunk chunk : chunks)
+        {
+            speedSquared = Math.max(speedSquared, chunk.speedSquared);
+            accelerationSquared = Math.max(accelerationSquared, chunk.accelerationSquared);
+        }
+        unitCell.setTimeStep(stepController.next(unitCell.getTimeStep(), Math.sqrt(speedSquared),
+            Math.sqrt(accelerationSquared), respaSteps));
+    }
+
+    private void doForces ()
+    {
+        /* Bin the new positions before evaluating the forces on them */
+        binNext();
+        kick = unitCell.getTimeStep() * 0.5;
+        phase(FORCE);
+        phase(REDUCE);
+    }
+
+    /*
+     * One step of the multiple time step integrator:
+     * v += outer acceleration * dt / 2
+     * repeat the inner steps: velocity Verlet with the inner forces and dt / inner steps
+     * v += new outer acceleration * dt / 2
+     * The current accelerations of the store are the inner ones
+     */
+    private void doRespaStep ()
+    {
+        ParticleStore store = unitCell.getStore();
+        boolean observed = observing;
+        observing = false;
+        if (!outerValid)
+        {
+            initializeRespa();
+        }
+
+        double dt = unitCell.getTimeStep();
+        kick = dt / respaSteps * 0.5;
+        for (int m = 0; m < respaSteps; m++)
+        {
+            firstInner = m == 0;
+            phase(INNER_UPDATE);
+            bin(nearCells, store.getNextX(), store.getNextY());
+            phase(NEAR_FORCE);
+            phase(NEAR_REDUCE);
+        }
+
+        binNext();
+        observing = observed;
+        kick = dt * 0.5;
+        phase(FAR_FORCE);
+        phase(FAR_REDUCE);
+    }
+
+    /*
+     * Evaluate the inner and the outer accelerations at the current
+     * positions, on the first step and after a restart. The results are
+     * those the previous step would have left
+     */
+    private void initializeRespa ()
+    {
+        ParticleStore store = unitCell.getStore();
+        int n = store.size();
+        System.arraycopy(store.getX(), 0, store.getNextX(), 0, n);
+        System.arraycopy(store.getY(), 0, store.getNextY(), 0, n);
+        kick = 0;
+        bin(nearCells, store.getNextX(), store.getNextY());
+        phase(NEAR_FORCE);
+        phase(NEAR_REDUCE);
+        System.arraycopy(store.getNextAx(), 0, store.getAx(), 0, n);
+        System.arraycopy(store.getNextAy(), 0, store.getAy(), 0, n);
+        binNext();
+        phase(FAR_FORCE);
+        phase(FAR_REDUCE);
+        outerValid = true;
+    }
+
+    /* Bin the next positions for the pair forces of the unit cell */
+    private void binNext ()
+    {
+        ParticleStore store = unitCell.getStore();
+        NeighborList neighborList = unitCell.getNeighborList();
+        if (neighborList != null)
+        {
+            updateNeighbors(neighborList, store.getNextX(), store.getNextY());
+        }
+        else
+        {
+            bin(unitCell.getCellList(), store.getNextX(), store.getNextY());
+        }
+    }
+
+    /*
+     * Bin positions into a cell list in two phases: each chunk chains its
+     * particles, then links the chains of every chunk in a range of cells
+     */
+    private void bin (CellList cellList, double[] x, double[] y)
+    {
+        binX = x;
+        binY = y;
+        binned = cellList;
+        rebuilt = null;
+        cellList.prepareParts(chunks.length, unitCell.getStore().size());
+        phase(BIN);
+        phase(LINK);
+    }
+
+    /*
+     * Check the neighbour list in one phase, each chunk checking its
+     * particles, and rebuild it once stale: each chunk bins, links, and
+     * searches the neighbours of its particles, which are then placed one
+     * chunk after the other in the list
+     */
+    private void updateNeighbors (NeighborList neighborList, double[] x, double[] y)
+    {
+        int n = unitCell.getStore().size();
+        binX = x;
+        binY = y;
+        binned = null;
+        rebuilt = neighborList;
+        neighborList.countStep();
+        boolean stale = neighborList.getReferenceX().length != n;
+        if (!stale)
+        {
+            phase(STALE);
+            for (Chunk chunk : chunks)
+            {
+                stale |= chunk.stale;
+            }
+        }
+        if (stale)
+        {
+            neighborList.prepareParts(n);
+            phase(REFERENCE);
+            phase(LINK);
+            phase(SEARCH);
+            neighborList.countParts();
+            phase(PLACE);
+        }
+    }
+
+    /*
+     * Forks every chunk of one phase and waits for all of them. The chunks
+     * still on top of the local queue are taken back and computed here. The
+     * thieves take the others from the bottom, so once one chunk could not be
+     * taken back, every later one is running elsewhere and there is nothing
+     * left to help with. The driver then parks until the count of pending
+     * chunks drops to zero. A blocking join would allocate a wait node, the
+     * preallocated counter does not
+     */
+    private void phase (int phase)
+    {
+        pending.set(chunks.length);
+        waiter = Thread.currentThread();
+        for (int c = chunks.length - 1; c >= 0; c--)
+        {
+            chunks[c].phase = phase;
+            chunks[c].reinitialize();
+            if (c > 0)
+            {
+                chunks[c].fork();
+            }
+        }
+        chunks[0].compute();
+        int stolen = chunks.length;
+        for (int c = 1; c < chunks.length && stolen == chunks.length; c++)
+        {
+            if (chunks[c].tryUnfork())
+            {
+                chunks[c].compute();
+            }
+            else
+            {
+                stolen = c;
+            }
+        }
+        for (int spin = 0; pending.get() > 0; spin++)
+        {
+            if (spin < SPINS)
+            {
+                Thread.onSpinWait();
+            }
+            else
+            {
+                LockSupport.park(this);
+            }
+        }
+        for (int c = stolen; c < chunks.length; c++)
+        {
+            /* Counted down just before the task completes, reinitialized by the next phase */
+            while (!chunks[c].isDone())
+            {
+                Thread.yield();
+            }
+            if (chunks[c].isCompletedAbnormally())
+            {
+                chunks[c].join();
+            }
+        }
+    }
+
+    /* A contiguous range of particles */
+    @SuppressWarnings("serial")
+    private class Chunk extends RecursiveAction
+    {
+        final int index;
+        final int from;
+        final int to;
+        int phase;
+        /* Largest squared speed and acceleration of the range, found by the limits phase */
+        double speedSquared;
+        double accelerationSquared;
+        /* Whether a particle of the range moved out of the skin, found by the stale phase */
+        boolean stale;
+
+        Chunk (int index, int from, int to)
+        {
+            this.index = index;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute ()
+        {
+            try
+            {
+                run();
+            }
+            finally
+            {
+                if (pending.decrementAndGet() == 0)
+                {
+                    LockSupport.unpark(waiter);
+                }
+            }
+        }
+
+        private void run ()
+        {
+            ParticleStore store = unitCell.getStore();
+            switch (phase)
+            {
+                case UPDATE:
+                    update(from, to);
+                    break;
+                case FORCE:
+                    force(from, to, observing ? sums[index] : null, ForceKernel.ALL_PAIRS);
+                    break;
+                case REDUCE:
+                    reduce(from, to, store.getNextAx(), store.getNextAy(), true, true,
+                        observing ? sums[index] : null);
+                    break;
+                case INNER_UPDATE:
+                    innerUpdate(from, to);
+                    break;
+                case LIMITS:
+                    limits(this, store);
+                    break;
+                case NEAR_FORCE:
+                    force(from, to, null, ForceKernel.NEAR_PAIRS);
+                    break;
+                case NEAR_REDUCE:
+                    reduce(from, to, store.getNextAx(), store.getNextAy(), !wallsOuter, !gravityOuter, null);
+                    break;
+                case FAR_FORCE:
+                    force(from, to, observing ? sums[index] : null, ForceKernel.FAR_PAIRS);
+                    break;
+                case BIN:
+                    binned.binPart(index, binX, binY, from, to);
+                    break;
+                case LINK:
+                    link(index);
+                    break;
+                case STALE:
+                    stale = rebuilt.isStale(binX, binY, from, to);
+                    break;
+                case REFERENCE:
+                    rebuilt.binPart(index, binX, binY);
+                    break;
+                case SEARCH:
+                    rebuilt.searchPart(index);
+                    break;
+                case PLACE:
+                    rebuilt.placePart(index);
+                    break;
+                default:
+                    reduce(from, to, outerAx, outerAy, wallsOuter, gravityOuter, observing ? sums[index] : null);
+            }
+        }
+    }
+
+    /* Link the chains of every chunk in the share of the cells of one chunk */
+    private void link (int index)
+    {
+        int cells = rebuilt != null ? rebuilt.getCellCount() : binned.getCellCount();
+        int fromCell = NeighborList.partStart(index, chunks.length, cells);
+        int toCell = NeighborList.partStart(index + 1, chunks.length, cells);
+        if (rebuilt != null)
+        {
+            rebuilt.linkCells(fromCell, toCell);
+        }
+        else
+        {
+            binned.linkParts(fromCell, toCell);
+        }
+    }
+
+    /*
+     * nextPosition = position + (velocity * dt) + (acceleration * 0.5 dt * dt)
+     * nextVelocity = velocity + (acceleration * 0.5 * dt)
+     */
+    private void update (int from, int to)
+    {
+        ParticleStore store = unitCell.getStore();
+        final double[] x = store.getX(), y = store.getY();
+        final double[] vx = store.getVx(), vy = store.getVy();
+        final double[] ax = store.getAx(), ay = store.getAy();
+        final double[] nextX = store.getNextX(), nextY = store.getNextY();
+        final double[] nextVx = store.getNextVx(), nextVy = store.getNextVy();
+        final double dt = unitCell.getTimeStep();
+        final double dtOver2 = dt * 0.5;
+        final double dtSquaredOver2 = dt * dt * 0.5;
+
+        for (int i = from; i < to; i++)
+        {
+            nextX[i] = x[i] + vx[i] * dt + ax[i] * dtSquaredOver2;
+            nextY[i] = y[i] + vy[i] * dt + ay[i] * dtSquaredOver2;
+            nextVx[i] = vx[i] + ax[i] * dtOver2;
+            nextVy[i] = vy[i] + ay[i] * dtOver2;
+        }
+    }
+
+    /*
+     * Largest squared speed and acceleration of the current state in the
+     * range of a chunk
+     */
+    private void limits (Chunk chunk, ParticleStore store)
+    {
+        final double[] vx = store.getVx(), vy = store.getVy();
+        final double[] ax = store.getAx(), ay = store.getAy();
+        double speedSquared = 0;
+        double accelerationSquared = 0;
+        for (int i = chunk.from; i < chunk.to; i++)
+        {
+            speedSquared = Math.max(speedSquared, vx[i] * vx[i] + vy[i] * vy[i]);
+            accelerationSquared = Math.max(accelerationSquared, ax[i] * ax[i] + ay[i] * ay[i]);
+        }
+        chunk.speedSquared = speedSquared;
+        chunk.accelerationSquared = accelerationSquared;
+    }
+
+    /*
+     * One inner step of the positions, from the current state on the first one:
+     * nextVelocity = velocity + outerAcceleration * 0.5 dt + acceleration * 0.5 dt / inner steps
+     * and from the next state on the following ones:
+     * nextVelocity += nextAcceleration * 0.5 dt / inner steps
+     * then nextPosition += nextVelocity * dt / inner steps
+     */
+    private void innerUpdate (int from, int to)
+    {
+        ParticleStore store = unitCell.getStore();
+        final double[] nextX = store.getNextX(), nextY = store.getNextY();
+        final double[] nextVx = store.getNextVx(), nextVy = store.getNextVy();
+        final double dt = unitCell.getTimeStep();
+        final double innerDt = dt / respaSteps;
+        final double innerKick = innerDt * 0.5;
+
+        if (firstInner)
+        {
+            final double outerKick = dt * 0.5;
+            final double[] x = store.getX(), y = store.getY();
+            final double[] vx = store.getVx(), vy = store.getVy();
+            final double[] ax = store.getAx(), ay = store.getAy();
+            for (int i = from; i < to; i++)
+            {
+                nextVx[i] = vx[i] + outerAx[i] * outerKick + ax[i] * innerKick;
+                nextVy[i] = vy[i] + outerAy[i] * outerKick + ay[i] * innerKick;
+                nextX[i] = x[i] + nextVx[i] * innerDt;
+                nextY[i] = y[i] + nextVy[i] * innerDt;
+            }
+            return;
+        }
+
+        final double[] nextAx = store.getNextAx(), nextAy = store.getNextAy();
+        for (int i = from; i < to; i++)
+        {
+            nextVx[i] += nextAx[i] * innerKick;
+            nextVy[i] += nextAy[i] * innerKick;
+            nextX[i] += nextVx[i] * innerDt;
+            nextY[i] += nextVy[i] * innerDt;
+        }
+    }
+
+    /*
+     * Accumulate a group of pair forces at the new positions into the range
+     * of the chunk in the buffers, and the pair energy, virial and distances
+     * when observing
+     */
+    private void force (int from, int to, PairSums observed, int group)
+    {
+        ParticleStore store = unitCell.getStore();
+        if (observed != null)
+        {
+            observed.clear();
+        }
+        unitCell.getForceKernel().accumulatePairs(from, to, store.getNextX(), store.getNextY(),
+            group == ForceKernel.NEAR_PAIRS ? nearCells : unitCell.getCellList(),
+            group == ForceKernel.NEAR_PAIRS ? null : unitCell.getNeighborList(), forceX, forceY, observed, group);
+    }
+
+    /*
+     * acceleration = walls + gravity + pair forces, with the
+     * walls and the gravity only when they belong to the group reduced
+     * nextVelocity += acceleration * kick
+     * When observing, also sum the kinetic energy and the energy of the walls
+     * and the gravity. Forces are accelerations, so the energies are per unit mass
+     */
+    private void reduce (int from, int to, double[] ax, double[] ay, boolean walls, boolean gravity,
+        PairSums observed)
+    {
+        ParticleStore store = unitCell.getStore();
+        final double[] nextX = store.getNextX(), nextY = store.getNextY();
+        final double[] nextVx = store.getNextVx(), nextVy = store.getNextVy();
+        final double kick = this.kick;
+        final ForceKernel kernel = unitCell.getForceKernel();
+        final double g = kernel.getGravity();
+        final double down = gravity ? g : 0;
+
+        final double[] fx = forceX, fy = forceY;
+        for (int i = from; i < to; i++)
+        {
+            ax[i] = (walls ? kernel.wall(nextX[i]) : 0) + fx[i];
+            ay[i] = (walls ? kernel.wall(nextY[i]) : 0) - down + fy[i];
+            fx[i] = 0;
+            fy[i] = 0;
+            nextVx[i] += ax[i] * kick;
+            nextVy[i] += ay[i] * kick;
+        }
+
+        if (observed != null && observed.energies)
+        {
+            double kinetic = 0;
+            double external = 0;
+            for (int i = from; i < to; i++)
+            {
+                kinetic += 0.5 * (nextVx[i] * nextVx[i] + nextVy[i] * nextVy[i]);
+                external += kernel.wallPotential(nextX[i]) + kernel.wallPotential(nextY[i]) + g * nextY[i];
+            }
+            observed.kinetic += kinetic;
+            observed.external += external;
+        }
+    }
+}
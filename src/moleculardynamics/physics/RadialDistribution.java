@@ -0,0 +1,144 @@
+package moleculardynamics.physics;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+
+/**
+ * Radial distribution function
+ * Accumulates g(r) up to the force cutoff from the pairs the force kernel
+ * already visits. Each task bins its pairs into its own histogram, and the
+ * histograms are merged into the total once a sampled step is over. The
+ * normalization divides the pair count of each ring by the count of an
+ * ideal gas of the same density:
+ *   g(r) = 2 H(r) / (samples * N * rho * pi * ((r + dr)^2 - r^2))
+ * the last ring ending at the cutoff when the cutoff is not a whole number
+ * of bins. The box has walls, not periodic images, so g(r) is slightly
+ * lowered by the particles near the walls
+ */
+public class RadialDistribution
+{
+    private final double binWidth;
+    private final double cutoff;
+    private final int stride;
+    private final long[] total;
+    private long samples;
+    private double densitySum;
+    private long particleSum;
+
+
+    /**
+     * Create an accumulator
+     * @param binWidth The bin width
+     * @param cutoff The largest distance, the force cutoff
+     * @param stride The number of steps between two samples
+     */
+    public RadialDistribution (double binWidth, double cutoff, int stride)
+    {
+        if (binWidth <= 0 || stride <= 0)
+        {
+            throw new IllegalArgumentException("Invalid bin width " + binWidth + " or stride " + stride);
+        }
+        this.binWidth = binWidth;
+        this.cutoff = cutoff;
+        this.stride = stride;
+        this.total = new long[(int) Math.ceil(cutoff / binWidth)];
+    }
+
+    /**
+     * @param step A step number
+     * @return Whether the step is sampled
+     */
+    public boolean isDue (long step)
+    {
+        return step % stride == 0;
+    }
+
+    /**
+     * @return An empty histogram for one task
+     */
+    public long[] createHistogram ()
+    {
+        return new long[total.length];
+    }
+
+    /**
+     * Merge the histograms of every task after a sampled step, and empty them
+     * @param histograms The histograms of the tasks
+     * @param particles The number of particles
+     * @param area The area of the box
+     */
+    public synchronized void merge (long[][] histograms, int particles, double area)
+    {
+        for (long[] histogram : histograms)
+        {
+            for (int b = 0; b < total.length; b++)
+            {
+                total[b] += histogram[b];
+                histogram[b] = 0;
+            }
+        }
+        samples++;
+        particleSum += particles;
+        densitySum += particles / area;
+    }
+
+    /**
+     * @return g(r) over each bin, 0 before the first sample
+     */
+    public synchronized double[] normalized ()
+    {
+        double[] g = new double[total.length];
+        if (samples == 0 || densitySum == 0)
+        {
+            return g;
+        }
+        double particles = particleSum / (double) samples;
+        double density = densitySum / samples;
+        for (int b = 0; b < total.length; b++)
+        {
+            double inner = b * binWidth;
+            double outer = Math.min(inner + binWidth, cutoff);
+            double ideal = particles * density * Math.PI * (outer * outer - inner * inner);
+            g[b] = 2.0 * total[b] / (samples * ideal);
+        }
+        return g;
+    }
+
+    /**
+     * Write the normalized g(r), one "r g" line per bin at the bin middle,
+     * the last bin ending at the cutoff
+     * @param path The file path
+     * @throws IOException If the file cannot be written
+     */
+    public void write (Path path) throws IOException
+    {
+        double[] g = normalized();
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8)))
+        {
+            writer.println("# r\tg(r)\tsamples " + samples);
+            for (int b = 0; b < g.length; b++)
+            {
+                writer.println(String.format("%.5f\t%.6f", (b * binWidth + Math.min((b + 1) * binWidth, cutoff)) / 2, g[b]));
+            }
+        }
+    }
+
+    public double getBinWidth ()
+    {
+        return binWidth;
+    }
+
+    public int getStride ()
+    {
+        return stride;
+    }
+
+    public synchronized long getSamples ()
+    {
+        return samples;
+    }
+}
@@ -0,0 +1,249 @@
+package moleculardynamics.physics;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Simulation controller
+ * Runs, pauses, steps and stops a unit cell from any thread, the display or
+ * a headless caller. The thread about to start a step, the driver thread on
+ * the worker pool or the last particle arriving on the barrier in the thread
+ * per particle mode, takes a permit first, and parks on a condition while
+ * there is none: a paused simulation uses no CPU, and a command resumes it
+ * as soon as the parked thread is scheduled. A step already started always
+ * completes. Starts paused
+ */
+public class SimulationController
+{
+    /**
+     * Controller state
+     */
+    public enum State
+    {
+        /* No step permitted */
+        PAUSED,
+        /* Steps permitted, until the final time or the requested count */
+        RUNNING,
+        /* Stopped, or the final time is reached */
+        STOPPED
+    }
+
+    private final UnitCell unitCell;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    /* Steps still permitted, Long.MAX_VALUE to run until the final time */
+    private long permits;
+    private boolean stepping;
+    private boolean stopped;
+    private Thread driver;
+
+
+    /**
+     * Create a paused controller and attach it to a unit cell, whose steps
+     * then only run through it
+     * @param unitCell The unit cell, on the worker pool or not yet started
+     */
+    public SimulationController (UnitCell unitCell)
+    {
+        this.unitCell = unitCell;
+        unitCell.setController(this);
+    }
+
+    /**
+     * Start the thread driving the steps, once. Nothing runs until a command
+     * permits steps
+     */
+    public synchronized void start ()
+    {
+        if (driver != null)
+        {
+            return;
+        }
+        driver = new Thread(new Runnable() {
+            @Override
+            public void run ()
+            {
+                if (unitCell.getEngine() == null)
+                {
+                    /* The particles take the next permits on their barrier */
+                    if (awaitPermit())
+                    {
+                        unitCell.start();
+                    }
+                    return;
+                }
+                while (unitCell.getElapsedTime() < unitCell.getConfig().getTf() && awaitPermit())
+                {
+                    unitCell.step();
+                }
+                finish();
+            }
+        }, "Controller");
+        driver.start();
+    }
+
+    /**
+     * Run until the final time
+     */
+    public void run ()
+    {
+        permit(Long.MAX_VALUE);
+    }
+
+    /**
+     * Run a number of steps, then pause
+     * @param steps The number of steps
+     */
+    public void run (long steps)
+    {
+        permit(steps);
+    }
+
+    /**
+     * Run a single step, then pause
+     */
+    public void step ()
+    {
+        permit(1);
+    }
+
+    /**
+     * Pause after the running step
+     */
+    public void pause ()
+    {
+        permit(0);
+    }
+
+    /**
+     * Stop for good, and wait until the running step completed. Must not be
+     * called from the stepping threads
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void stop () throws InterruptedException
+    {
+        lock.lock();
+        try
+        {
+            stopped = true;
+            permits = 0;
+            changed.signalAll();
+            while (stepping)
+            {
+                changed.await();
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        unitCell.stepsEnded();
+    }
+
+    /**
+     * Wait until the permitted steps have run, or the controller stopped
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void awaitPaused () throws InterruptedException
+    {
+        lock.lock();
+        try
+        {
+            while (!stopped && (permits > 0 || stepping))
+            {
+                changed.await();
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The current state
+     */
+    public State getState ()
+    {
+        lock.lock();
+        try
+        {
+            return stopped ? State.STOPPED : permits > 0 ? State.RUNNING : State.PAUSED;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private void permit (long steps)
+    {
+        lock.lock();
+        try
+        {
+            if (!stopped)
+            {
+                permits = steps;
+                changed.signalAll();
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Called by the thread about to start a step, once the previous step, if
+     * any, completed. Parks until a step is permitted and takes its permit
+     * @return False once stopped, the step must not run
+     */
+    boolean awaitPermit ()
+    {
+        lock.lock();
+        try
+        {
+            stepping = false;
+            changed.signalAll();
+            while (permits == 0 && !stopped)
+            {
+                changed.awaitUninterruptibly();
+            }
+            if (stopped)
+            {
+                return false;
+            }
+            if (permits != Long.MAX_VALUE)
+            {
+                permits--;
+            }
+            stepping = true;
+            return true;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Called by the stepping thread once the final time is reached
+     */
+    void finish ()
+    {
+        lock.lock();
+        try
+        {
+            stopped = true;
+            stepping = false;
+            permits = 0;
+            changed.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        unitCell.stepsEnded();
+    }
+}
@@ -0,0 +1,68 @@
+package moleculardynamics.physics;
+
+
+/**
+ * Step controller
+ * Chooses the time step of each step so that no particle moves further than
+ * a given displacement: with the largest speed v and acceleration a of the
+ * state, the step solves v dt + a dt^2 / 2 = displacement. The step shrinks
+ * at once when two particles collide, grows by a bounded factor when the
+ * system calms down, and stays within configured bounds
+ */
+public class StepController
+{
+    /* Largest growth of the step from one step to the next */
+    private static final double GROWTH = 1.2;
+
+    private final double minimum;
+    private final double maximum;
+    private final double displacement;
+    private long steps;
+    private double sum;
+
+
+    /**
+     * @param minimum The smallest step
+     * @param maximum The largest step
+     * @param displacement The largest distance a particle may move in one step
+     */
+    public StepController (double minimum, double maximum, double displacement)
+    {
+        this.minimum = minimum;
+        this.maximum = maximum;
+        this.displacement = displacement;
+    }
+
+    /**
+     * @param previous The previous step
+     * @param speed The largest speed
+     * @param acceleration The largest acceleration
+     * @param substeps The number of inner steps the step is divided into
+     * @return The next step
+     */
+    public double next (double previous, double speed, double acceleration, int substeps)
+    {
+        /* Positive root of a dt^2 / 2 + v dt - displacement, without cancellation */
+        double step = substeps * 2 * displacement / (speed + Math.sqrt(speed * speed + 2 * acceleration * displacement));
+        step = Math.max(minimum, Math.min(Math.min(maximum, GROWTH * previous), step));
+        steps++;
+        sum += step;
+        return step;
+    }
+
+    /**
+     * @return The number of steps chosen
+     */
+    public long getSteps ()
+    {
+        return steps;
+    }
+
+    /**
+     * @return The mean of the chosen steps
+     */
+    public double getMeanStep ()
+    {
+        return steps == 0 ? 0 : sum / steps;
+    }
+}
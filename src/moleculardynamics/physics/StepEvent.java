@@ -0,0 +1,145 @@
+package moleculardynamics.physics;
+
+
+/**
+ * Step event
+ * The state of a unit cell at one committed step, published to the
+ * subscribers of a StepPublisher: the positions copied at the step
+ * boundary, and the observables of the last evaluated step when they are
+ * enabled. Shared by every subscriber it is delivered to, and only valid
+ * until onNext returns: the publisher then reuses its buffers for a later
+ * step. A subscriber keeping the positions copies them with copyPositions
+ */
+public final class StepEvent
+{
+    /* Cached, values() clones its array on every call */
+    private static final Observables.Quantity[] QUANTITIES = Observables.Quantity.values();
+
+    private final double[] x;
+    private final double[] y;
+    private final double[] quantities = new double[QUANTITIES.length];
+    private long step;
+    private double time;
+    private double timeStep;
+    private int count;
+    private long observedStep;
+
+    /* The subscribers and the offer holding the event, guarded by the pool of the publisher */
+    int holders;
+
+
+    /*
+     * Allocate the buffers of an event, reused for many steps
+     */
+    StepEvent (int capacity)
+    {
+        x = new double[capacity];
+        y = new double[capacity];
+    }
+
+    /* The largest number of particles the buffers hold */
+    int getCapacity ()
+    {
+        return x.length;
+    }
+
+    /*
+     * Copy the current positions of a store and the values of the observables
+     */
+    void fill (long step, double time, double timeStep, ParticleStore store, Observables observables)
+    {
+        this.step = step;
+        this.time = time;
+        this.timeStep = timeStep;
+        count = store.size();
+        System.arraycopy(store.getX(), 0, x, 0, count);
+        System.arraycopy(store.getY(), 0, y, 0, count);
+        observedStep = observables != null ? observables.getStep() : -1;
+        for (Observables.Quantity quantity : QUANTITIES)
+        {
+            quantities[quantity.ordinal()] = observedStep >= 0 ? observables.get(quantity) : Double.NaN;
+        }
+    }
+
+    /**
+     * @return The number of committed steps
+     */
+    public long getStep ()
+    {
+        return step;
+    }
+
+    public double getTime ()
+    {
+        return time;
+    }
+
+    /**
+     * @return The time step of the step
+     */
+    public double getTimeStep ()
+    {
+        return timeStep;
+    }
+
+    /**
+     * @return The number of particles
+     */
+    public int getCount ()
+    {
+        return count;
+    }
+
+    /**
+     * @param i The particle index
+     * @return The X position of the particle
+     */
+    public double getX (int i)
+    {
+        return x[i];
+    }
+
+    /**
+     * @param i The particle index
+     * @return The Y position of the particle
+     */
+    public double getY (int i)
+    {
+        return y[i];
+    }
+
+    /**
+     * Copy the positions, to keep them once onNext returned
+     * @param x Receives the X positions, at least getCount() long
+     * @param y Receives the Y positions, at least getCount() long
+     */
+    public void copyPositions (double[] x, double[] y)
+    {
+        System.arraycopy(this.x, 0, x, 0, count);
+        System.arraycopy(this.y, 0, y, 0, count);
+    }
+
+    /**
+     * @return The step the observables were last evaluated at, -1 when they
+     *         are not evaluated or not yet
+     */
+    public long getObservedStep ()
+    {
+        return observedStep;
+    }
+
+    /**
+     * @param quantity The quantity
+     * @return Its value at the observed step, NaN without observables
+     */
+    public double get (Observables.Quantity quantity)
+    {
+        return quantities[quantity.ordinal()];
+    }
+
+    @Override
+    public String toString ()
+    {
+        return "StepEvent [step=" + step + ", time=" + time + ", particles=" + count + "]";
+    }
+}
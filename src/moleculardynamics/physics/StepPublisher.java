@@ -0,0 +1,431 @@
+package moleculardynamics.physics;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadFactory;
+
+
+/**
+ * Step publisher
+ * Publishes the committed steps of a unit cell as StepEvents to any number
+ * of subscribers, each with its own demand and policy. The stepping thread
+ * never waits for a subscriber: it only copies the state when at least one
+ * subscriber takes the step, queues the event, and the events are delivered
+ * on an executor, one task at a time per subscriber. The events are pooled:
+ * once every subscriber an event was queued for returned from onNext, or
+ * lost it, its buffers are reused, so that the pool grows to the number of
+ * events in flight and the steps then copy without allocating. A subscriber
+ * that cannot keep up loses steps instead of slowing the simulation:
+ *
+ *   LATEST  takes a step only while it has demand and nothing undelivered,
+ *           so it always receives the step following its request and the
+ *           steps in between are coalesced without being copied
+ *   BUFFER  takes every step while fewer than its capacity are undelivered,
+ *           and drops the new steps once they are
+ */
+public class StepPublisher implements Flow.Publisher<StepEvent>
+{
+    /**
+     * What a subscriber receives when it falls behind
+     */
+    public enum Policy
+    {
+        /* The step following the last request, the others are skipped */
+        LATEST,
+        /* Every step, until the buffer is full */
+        BUFFER
+    }
+
+    /* Delivery threads shared by the publishers, so that a blocked subscriber only holds its own */
+    private static final ExecutorService DELIVERY = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread (Runnable task)
+        {
+            Thread thread = new Thread(task, "Step events");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Executor executor;
+    /* Copied on write, so that offer iterates without allocating */
+    private volatile Link[] links = new Link[0];
+    /* Events no subscriber holds, guarded by itself */
+    private final ArrayDeque<StepEvent> free = new ArrayDeque<StepEvent>();
+    private volatile boolean closed;
+    private volatile long published;
+    private volatile long dropped;
+
+
+    /**
+     * Create a publisher delivering on a cached pool of daemon threads
+     */
+    public StepPublisher ()
+    {
+        this(DELIVERY);
+    }
+
+    /**
+     * Create a publisher
+     * @param executor Runs the deliveries to the subscribers
+     */
+    public StepPublisher (Executor executor)
+    {
+        this.executor = executor;
+    }
+
+    /**
+     * Subscribe with the LATEST policy
+     * @param subscriber The subscriber
+     */
+    @Override
+    public void subscribe (Flow.Subscriber<? super StepEvent> subscriber)
+    {
+        subscribe(subscriber, Policy.LATEST, 1);
+    }
+
+    /**
+     * Subscribe with a policy
+     * @param subscriber The subscriber
+     * @param policy What the subscriber receives when it falls behind
+     * @param capacity The largest number of undelivered events of the BUFFER policy
+     */
+    public void subscribe (Flow.Subscriber<? super StepEvent> subscriber, Policy policy, int capacity)
+    {
+        if (capacity <= 0)
+        {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        Link link = new Link(subscriber, policy, capacity);
+        subscriber.onSubscribe(link);
+        /* Added before checking, so that a concurrent close completes it, or this check does */
+        addLink(link);
+        if (closed)
+        {
+            link.complete();
+        }
+    }
+
+    /*
+     * Called by the stepping thread after each committed step. Copies the
+     * state once for every subscriber taking the step
+     */
+    void offer (long step, double time, double timeStep, ParticleStore store, Observables observables)
+    {
+        Link[] current = links;
+        if (current.length == 0 || closed)
+        {
+            return;
+        }
+        StepEvent event = null;
+        for (Link link : current)
+        {
+            if (!link.takes())
+            {
+                if (link.policy == Policy.BUFFER)
+                {
+                    dropped++;
+                }
+                continue;
+            }
+            if (event == null)
+            {
+                event = acquire(store.size());
+                event.fill(step, time, timeStep, store, observables);
+                published++;
+            }
+            retain(event);
+            link.enqueue(event);
+        }
+        if (event != null)
+        {
+            release(event);
+        }
+    }
+
+    /* A free event held by the caller, allocated while fewer are free than in flight */
+    private StepEvent acquire (int count)
+    {
+        StepEvent event;
+        synchronized (free)
+        {
+            event = free.pollFirst();
+        }
+        if (event == null || event.getCapacity() < count)
+        {
+            event = new StepEvent(count);
+        }
+        event.holders = 1;
+        return event;
+    }
+
+    private void retain (StepEvent event)
+    {
+        synchronized (free)
+        {
+            event.holders++;
+        }
+    }
+
+    /* Back to the pool once the last holder released it */
+    private void release (StepEvent event)
+    {
+        synchronized (free)
+        {
+            if (--event.holders == 0)
+            {
+                free.addLast(event);
+            }
+        }
+    }
+
+    private synchronized void addLink (Link link)
+    {
+        Link[] copy = Arrays.copyOf(links, links.length + 1);
+        copy[links.length] = link;
+        links = copy;
+    }
+
+    private synchronized void removeLink (Link link)
+    {
+        Link[] current = links;
+        for (int l = 0; l < current.length; l++)
+        {
+            if (current[l] == link)
+            {
+                Link[] copy = Arrays.copyOf(current, current.length - 1);
+                System.arraycopy(current, l + 1, copy, l, current.length - l - 1);
+                links = copy;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Complete every subscription once its undelivered events are delivered.
+     * Later subscribers are completed at once
+     */
+    public void close ()
+    {
+        closed = true;
+        for (Link link : links)
+        {
+            link.complete();
+        }
+    }
+
+    /**
+     * @return Whether there is at least one subscriber
+     */
+    public boolean hasSubscribers ()
+    {
+        return links.length > 0;
+    }
+
+    /**
+     * @return The number of steps copied into an event
+     */
+    public long getPublished ()
+    {
+        return published;
+    }
+
+    /**
+     * @return The number of steps dropped by full BUFFER subscribers, once per subscriber
+     */
+    public long getDropped ()
+    {
+        return dropped;
+    }
+
+    public boolean isClosed ()
+    {
+        return closed;
+    }
+
+    /* The subscription of one subscriber, and the task delivering its events */
+    private class Link implements Flow.Subscription, Runnable
+    {
+        final Flow.Subscriber<? super StepEvent> subscriber;
+        final Policy policy;
+        final int capacity;
+
+        /* Guarded by this */
+        private final ArrayDeque<StepEvent> pending = new ArrayDeque<StepEvent>();
+        private long demand;
+        private boolean delivering;
+        private boolean completing;
+        private boolean done;
+        private Throwable error;
+
+        Link (Flow.Subscriber<? super StepEvent> subscriber, Policy policy, int capacity)
+        {
+            this.subscriber = subscriber;
+            this.policy = policy;
+            this.capacity = policy == Policy.LATEST ? 1 : capacity;
+        }
+
+        synchronized boolean takes ()
+        {
+            return !done && !completing
+                && (policy == Policy.LATEST ? demand > 0 && pending.isEmpty() && !delivering : pending.size() < capacity);
+        }
+
+        void enqueue (StepEvent event)
+        {
+            synchronized (this)
+            {
+                if (done)
+                {
+                    /* Cancelled since it took the step */
+                    release(event);
+                    return;
+                }
+                pending.addLast(event);
+            }
+            schedule();
+        }
+
+        /* Give the undelivered events back, with the lock held */
+        private void discardPending ()
+        {
+            StepEvent event;
+            while ((event = pending.pollFirst()) != null)
+            {
+                release(event);
+            }
+        }
+
+        /* Idempotent, close and subscribe may both complete a link */
+        void complete ()
+        {
+            synchronized (this)
+            {
+                if (completing || done)
+                {
+                    return;
+                }
+                completing = true;
+            }
+            schedule();
+        }
+
+        @Override
+        public void request (long n)
+        {
+            synchronized (this)
+            {
+                if (done)
+                {
+                    return;
+                }
+                if (n <= 0)
+                {
+                    /* Rule 3.9 of the reactive streams specification */
+                    error = new IllegalArgumentException("Non-positive request " + n);
+                    discardPending();
+                }
+                else
+                {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel ()
+        {
+            synchronized (this)
+            {
+                done = true;
+                discardPending();
+            }
+            removeLink(this);
+        }
+
+        /* Start a delivery task unless one is running */
+        private void schedule ()
+        {
+            synchronized (this)
+            {
+                if (delivering || done)
+                {
+                    return;
+                }
+                delivering = true;
+            }
+            executor.execute(this);
+        }
+
+        /* Deliver while there is demand, then the completion or the error */
+        @Override
+        public void run ()
+        {
+            while (true)
+            {
+                StepEvent event;
+                Throwable failure = null;
+                boolean completed = false;
+                synchronized (this)
+                {
+                    if (done)
+                    {
+                        delivering = false;
+                        return;
+                    }
+                    if (error != null)
+                    {
+                        failure = error;
+                        done = true;
+                    }
+                    else if (pending.isEmpty() && completing)
+                    {
+                        completed = true;
+                        done = true;
+                    }
+                    if (failure == null && !completed && (pending.isEmpty() || demand == 0))
+                    {
+                        delivering = false;
+                        return;
+                    }
+                    event = done ? null : pending.pollFirst();
+                    if (event != null && demand != Long.MAX_VALUE)
+                    {
+                        demand--;
+                    }
+                }
+                if (failure != null)
+                {
+                    removeLink(this);
+                    subscriber.onError(failure);
+                    return;
+                }
+                if (completed)
+                {
+                    removeLink(this);
+                    subscriber.onComplete();
+                    return;
+                }
+                try
+                {
+                    subscriber.onNext(event);
+                }
+                catch (RuntimeException e)
+                {
+                    cancel();
+                    subscriber.onError(e);
+                    return;
+                }
+                finally
+                {
+                    release(event);
+                }
+            }
+        }
+    }
+}
@@ -1,30 +1,50 @@
 package moleculardynamics.physics;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.CyclicBarrier;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.BooleanSupplier;
 
 import moleculardynamics.Parameters;
+import moleculardynamics.SimulationConfig;
 
-import moleculardynamics.maths.Vector2D;
-import moleculardynamics.ui.UnitCellListener;
+import moleculardynamics.io.SnapshotPipeline;
+import moleculardynamics.placement.Placement;
+import moleculardynamics.placement.Placements;
+import moleculardynamics.ui.RenderFrames;
 
 
 /**
  * Unit cell class
  * Contains a pool of particles
  */
-public class UnitCell implements Runnable
+public class UnitCell
 {
+	private ParticleStore store;
 	private List<Particle> particles;
-	private double elapsedTime = 0;
-	private int nbCells;
-	private int nbCellsUpdate;
-	private ThreadGroup group;
-	private CyclicBarrier barrier;
-	
-	public UnitCellListener listener;
-    public boolean isPaused = false;
+	private SimulationConfig config;
+	private ForceKernel forceKernel;
+	private double boxWidth;
+	private volatile double elapsedTime = 0;
+	private volatile long stepCount = 0;
+	private volatile double timeStep;
+	private ParticleBarrier barrier;
+	private List<Thread> threads;
+	private String particleThreads;
+	private CellList cellList;
+	private NeighborList neighborList;
+	private PoolEngine engine;
+	private SnapshotPipeline snapshots;
+	private volatile RenderFrames renderFrames;
+	private Observables observables;
+	private RadialDistribution radialDistribution;
+	private volatile SimulationController controller;
+	private volatile StepPublisher stepPublisher;
 	
 	/**
 	 * Create an unit cell with an initial number of particles
@@ -32,102 +52,471 @@ public class UnitCell implements Runnable
 	 */
 	public UnitCell (int n)
 	{
+		this(new SimulationConfig().with(SimulationConfig.PARTICLE_COUNT, "" + n));
+	}
+
+	/**
+	 * Create an unit cell with an initial number of particles in a box
+	 * @param n The number of particles
+	 * @param boxWidth The box width
+	 */
+	public UnitCell (int n, double boxWidth)
+	{
+		this(new SimulationConfig().with(SimulationConfig.PARTICLE_COUNT, "" + n)
+				.with(SimulationConfig.BOX_WIDTH, "" + boxWidth));
+	}
+
+	/**
+	 * Create an unit cell from a configuration
+	 * @param config The simulation configuration
+	 */
+	public UnitCell (SimulationConfig config)
+	{
+		this(config, Placements.create(config));
+	}
+
+	/**
+	 * Create an unit cell from a configuration, with the particles placed
+	 * by a given placement instead of the one of the configuration
+	 * @param config The simulation configuration
+	 * @param placement Fills the initial positions
+	 */
+	public UnitCell (SimulationConfig config, Placement placement)
+	{
+		int n = config.getParticleCount();
+		this.config = config;
+		this.forceKernel = ForceKernel.create(config);
+		this.boxWidth = config.getBoxWidth();
+		this.timeStep = config.getDt();
+		store = new ParticleStore(n);
 		particles = new ArrayList<Particle>(n);
-		nbCells = n;
-		nbCellsUpdate = 0;
-		group = new ThreadGroup("Particules");
-		barrier = new CyclicBarrier(n,new Runnable() {
-            public void run() { 
-                for(Particle p : getParticles()) {
-                	p.update();
+		barrier = new ParticleBarrier(n, Parameters.BARRIER_WIDTH, new BooleanSupplier() {
+            public boolean getAsBoolean() { 
+                store.commit();
+                stepCompleted();
+                if (neighborList != null) {
+                	neighborList.update(store.getX(), store.getY(), store.size());
+                } else {
+                	cellList.build(store.getX(), store.getY(), store.size());
                 }
+                /* Releases the particle threads for good at the final time or on stop */
+                if (elapsedTime >= config.getTf()) {
+                	if (controller != null) {
+                		controller.finish();
+                	} else {
+                		stepsEnded();
+                	}
+                	return true;
+                }
+                return controller != null && !controller.awaitPermit();
               }
             });
-		/* Create random particles */
-		// TODO : Best random creation algorithm
-		for (; n > 0; n--)
+		/* Place the particles, at the same positions for a given seed */
+		SplittableRandom random = config.getSeed() < 0 ? new SplittableRandom() : new SplittableRandom(config.getSeed());
+		placement.place(store.getX(), store.getY(), n, boxWidth, random);
+		for (int i = 0; i < n; i++)
+		{
+			particles.add(new Particle(this, i));
+		}
+		Arrays.fill(store.getVx(), 1);
+		Arrays.fill(store.getVy(), 1);
+		Arrays.fill(store.getRadius(), config.getParticleRadius());
+		Arrays.fill(store.getWeight(), config.getParticleWeight());
+		cellList = new CellList(boxWidth, config.getForceCutoff());
+		cellList.build(store.getX(), store.getY(), store.size());
+		if (config.getNeighborSkin() > 0)
 		{
-			int randomX = (int)(Math.random()*Parameters.BOX_WIDTH);
-			int randomY = (int)(Math.random()*Parameters.BOX_WIDTH);
-					
-			Vector2D position = new Vector2D(randomX, randomY);
-			Vector2D velocity = new Vector2D(1,1);
+			enableNeighborList(config.getNeighborSkin());
+		}
+	}
 
-			Particle p = new Particle(this, position, velocity, Parameters.PARTICLE_RADIUS, Parameters.PARTICLE_WEIGHT);
-			particles.add(p);
+	/**
+	 * Use a Verlet neighbour list instead of rebuilding the cell list each step.
+	 * Must be called before start()
+	 * @param skin Distance added to the cutoff, the list is rebuilt once a particle moved half of it
+	 */
+	public void enableNeighborList (double skin)
+	{
+		/* Split as the chunks of the worker pool, particle threads need every neighbour */
+		neighborList = new NeighborList(boxWidth, config.getForceCutoff(), skin, engine != null ? engine.getChunkCount() : 0);
+		neighborList.build(store.getX(), store.getY(), store.size());
+	}
 
+	/**
+	 * Run the steps on a fixed pool of worker threads instead of one thread
+	 * per particle. Must be called before start()
+	 * @param threads The number of worker threads
+	 */
+	public void useWorkerPool (int threads)
+	{
+		engine = new PoolEngine(this, threads);
+		if (neighborList != null)
+		{
+			enableNeighborList(neighborList.getSkin());
 		}
 	}
 
+	/**
+	 * Run the steps on a pool shared with other unit cells. Steps called from
+	 * a worker of that pool run on the calling worker
+	 * @param pool The shared pool, not shut down by this unit cell
+	 * @param chunks The number of chunks the particles are split into
+	 */
+	public void useWorkerPool (ForkJoinPool pool, int chunks)
+	{
+		engine = new PoolEngine(this, pool, chunks);
+		if (neighborList != null)
+		{
+			enableNeighborList(neighborList.getSkin());
+		}
+	}
+
+	/**
+	 * Set the clock once the store was loaded from a checkpoint or placed by
+	 * the caller, and bin the new positions
+	 * @param stepCount The number of committed steps
+	 * @param elapsedTime The simulated time
+	 * @param timeStep The time step of the last committed step
+	 */
+	public void restore (long stepCount, double elapsedTime, double timeStep)
+	{
+		this.stepCount = stepCount;
+		this.elapsedTime = elapsedTime;
+		this.timeStep = timeStep;
+		cellList.build(store.getX(), store.getY(), store.size());
+		if (neighborList != null)
+		{
+			neighborList.build(store.getX(), store.getY(), store.size());
+		}
+	}
+
+	/**
+	 * Offer each committed step to a snapshot pipeline, which copies the
+	 * sampled steps and writes them on its own thread
+	 * @param snapshots The pipeline, or null to stop the output
+	 */
+	public void setSnapshotPipeline (SnapshotPipeline snapshots)
+	{
+		this.snapshots = snapshots;
+	}
+
+	/**
+	 * Publish render frames at the step boundaries, for a display that must
+	 * not touch the particle state. Publishes the current state at once
+	 * @return The render frames
+	 */
+	public RenderFrames enableRenderFrames ()
+	{
+		if (renderFrames == null)
+		{
+			RenderFrames frames = new RenderFrames(store.size());
+			frames.publish(stepCount, elapsedTime, store);
+			renderFrames = frames;
+		}
+		return renderFrames;
+	}
+
+	/**
+	 * Publish each committed step to the subscribers of a step publisher,
+	 * whose events are delivered on their own threads
+	 * @return The publisher, created on the first call
+	 */
+	public synchronized StepPublisher enableStepEvents ()
+	{
+		if (stepPublisher == null)
+		{
+			stepPublisher = new StepPublisher();
+		}
+		return stepPublisher;
+	}
+
+	/**
+	 * Evaluate the energies, the temperature and the pressure during the
+	 * steps of the worker pool
+	 * @param every The number of steps between two evaluations
+	 * @return The observables, updated as the steps run
+	 */
+	public Observables enableObservables (int every)
+	{
+		observables = new Observables(every);
+		return observables;
+	}
+
+	/**
+	 * Accumulate the radial distribution function up to the force cutoff
+	 * during the steps of the worker pool
+	 * @param binWidth The bin width
+	 * @param stride The number of steps between two samples
+	 * @return The accumulator, updated as the steps run
+	 */
+	public RadialDistribution enableRadialDistribution (double binWidth, int stride)
+	{
+		radialDistribution = new RadialDistribution(binWidth, config.getForceCutoff(), stride);
+		return radialDistribution;
+	}
+
+	/**
+	 * Execute one step on the worker pool
+	 */
+	public void step ()
+	{
+		engine.step();
+	}
+
+	/**
+	 * Execute several steps on the worker pool without allocating per step
+	 * @param steps The number of steps
+	 */
+	public void step (int steps)
+	{
+		engine.run(steps);
+	}
+
 	/**
 	 * Start the simulation for each particle
 	 */
 	public void start ()
 	{
+		if (engine != null)
+		{
+			/* A single thread drives the worker pool */
+			Thread t = new Thread(new Runnable() {
+				public void run() {
+					while (elapsedTime < config.getTf()) {
+						step();
+					}
+				}
+			}, "Engine");
+			t.start();
+			return;
+		}
+
 		/* Launch the thread for each particle */
+		ThreadFactory factory = virtualThreads();
+		particleThreads = factory != null ? "virtual" : "platform";
+		threads = new ArrayList<Thread>(particles.size());
 		for (int i = 0; i < particles.size(); i++)
 		{
-			Thread t = new Thread(group,particles.get(i), "Particle#" + (i+1));
+			Thread t = factory != null ? factory.newThread(particles.get(i))
+					: new Thread(particles.get(i), "Particle#" + (i+1));
+			threads.add(t);
 			t.start();
 		}
 	}
 
+	/*
+	 * Factory of named virtual threads when they are configured and the
+	 * runtime has them, else null for platform threads
+	 */
+	private ThreadFactory virtualThreads()
+	{
+		if (!config.getParticleThreads().equals("virtual"))
+		{
+			return null;
+		}
+		try
+		{
+			/* Looked up by name, so that this class still runs before Java 21 */
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "Particle#", 1L);
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			/* No virtual threads, platform threads run the same particles */
+			return null;
+		}
+	}
+
 	/**
-	 * Execute one step using Verlet algorithm
+	 * Wait until the particle threads stopped at the final time
+	 * @throws InterruptedException If interrupted while waiting
 	 */
-	@Override
-	public void run() {
-		
-		while(elapsedTime < 1) {
-			System.out.flush();
-			if (!isPaused) {
-				elapsedTime += Parameters.DT;
-				System.out.println("Updated : " + barrier.getNumberWaiting());
-				System.out.println(this.toString());
-				update();
+	public void join() throws InterruptedException
+	{
+		if (threads != null)
+		{
+			for (Thread t : threads)
+			{
+				t.join();
+			}
+		}
+	}
+
+	/**
+	 * @return The threads running the particles: platform or virtual, or null
+	 *         before start() or on the worker pool
+	 */
+	public String getParticleThreads()
+	{
+		return particleThreads;
+	}
+
+	/*
+	 * Complete the step events once no step will run anymore
+	 */
+	void stepsEnded()
+	{
+		StepPublisher publisher = stepPublisher;
+		if (publisher != null)
+		{
+			publisher.close();
+		}
+	}
+
+	/*
+	 * Advance the simulation clock once a step has been committed
+	 */
+	void stepCompleted()
+	{
+		stepCount++;
+		elapsedTime += timeStep;
+		StepPublisher publisher = stepPublisher;
+		if (publisher != null)
+		{
+			publisher.offer(stepCount, elapsedTime, timeStep, store, observables);
+		}
+		if (renderFrames != null)
+		{
+			renderFrames.publish(stepCount, elapsedTime, store);
+		}
+		if (snapshots != null)
+		{
+			try
+			{
+				snapshots.offer(stepCount, elapsedTime, store);
+			}
+			catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
 			}
 		}
 	}
 	
+	public SimulationConfig getConfig()
+	{
+		return config;
+	}
+	
+	public ForceKernel getForceKernel()
+	{
+		return forceKernel;
+	}
+	
+	public double getBoxWidth()
+	{
+		return boxWidth;
+	}
+	
 	public double getElapsedTime()
 	{
 		return elapsedTime;
 		
 	}
 	
+	/**
+	 * @return The time step of the running or the last step, the configured
+	 *         dt unless the step is adaptive
+	 */
+	public double getTimeStep()
+	{
+		return timeStep;
+	}
+	
+	void setTimeStep(double timeStep)
+	{
+		this.timeStep = timeStep;
+	}
+	
+	/**
+	 * @return The number of committed steps
+	 */
+	public long getStepCount()
+	{
+		return stepCount;
+	}
+	
 	public String toString(){
-		String result = "UnitCell [T= " + elapsedTime + " ] : ";
+		StringBuilder result = new StringBuilder("UnitCell [T= ").append(elapsedTime).append(" ] : ");
 		for (Particle p : particles){
 			
-			result += '\n';
-			result += '\t';
-			result += p.toString();
+			result.append('\n');
+			result.append('\t');
+			result.append(p.toString());
 		}
-		return result;
+		return result.toString();
 
 	}
 	
-	public synchronized void cellFinished(){
-		nbCellsUpdate++;
+	/**
+	 * @return The particle state arrays
+	 */
+	public ParticleStore getStore(){
+		return store;
 	}
 	
+	/**
+	 * @return Views on the particles, for the UI and callers working per particle
+	 */
 	public List<Particle> getParticles(){
 		return particles;
 	}
 	
-	public synchronized CyclicBarrier getBarrier() {
+	public CellList getCellList() {
+		return cellList;
+	}
+	
+	/**
+	 * @return The Verlet neighbour list, or null when the cell list is used
+	 */
+	public NeighborList getNeighborList() {
+		return neighborList;
+	}
+	
+	/**
+	 * @return The observables, or null when they are not evaluated
+	 */
+	public Observables getObservables() {
+		return observables;
+	}
+	
+	/**
+	 * @return The radial distribution accumulator, or null when it is not sampled
+	 */
+	public RadialDistribution getRadialDistribution() {
+		return radialDistribution;
+	}
+	
+	/**
+	 * @return The worker pool engine, or null in thread per particle mode
+	 */
+	public PoolEngine getEngine() {
+		return engine;
+	}
+	
+	/**
+	 * @return The barrier the particle threads meet on at the end of each step
+	 */
+	public ParticleBarrier getBarrier() {
 		return barrier;
 	}
 	
-	public void addUnitCellListener(UnitCellListener ig) {
-        listener = ig;
+    /**
+     * @return The step events, or null when they are not published
+     */
+    public StepPublisher getStepPublisher() {
+        return stepPublisher;
     }
 
-    public void update() {
-        listener.updateUnitCell();
+    /**
+     * @return The controller the steps run through, or null when they run freely
+     */
+    public SimulationController getController() {
+        return controller;
     }
 
-    public void setPaused(boolean paused) {
-        isPaused = paused;
+    void setController(SimulationController controller) {
+        this.controller = controller;
     }
 }
\ No newline at end of file
@@ -0,0 +1,108 @@
+package moleculardynamics.placement;
+
+import java.util.SplittableRandom;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+
+/**
+ * Lattice placement
+ * The particles on the widest square or hexagonal lattice holding them in
+ * the box, row by row, each particle optionally moved by a uniform jitter.
+ * Neighbours of both lattices are one spacing apart, and each coordinate
+ * moves by at most jitter / 2 spacings, so two particles stay at least
+ * (1 - sqrt(2) jitter) spacings apart. The rows are filled in parallel
+ */
+public class LatticePlacement implements Placement
+{
+    private static final double ROW_HEIGHT = Math.sqrt(3) / 2;
+
+    private final boolean hexagonal;
+    private final double jitter;
+    private final double minSeparation;
+
+
+    /**
+     * Create a lattice placement
+     * @param hexagonal Whether the lattice is hexagonal instead of square
+     * @param jitter The largest move of a coordinate, in spacings, below 1 / sqrt(2)
+     * @param minSeparation The smallest distance allowed between two particles
+     */
+    public LatticePlacement (boolean hexagonal, double jitter, double minSeparation)
+    {
+        if (jitter < 0 || jitter * Math.sqrt(2) >= 1)
+        {
+            throw new IllegalArgumentException("Invalid jitter " + jitter);
+        }
+        this.hexagonal = hexagonal;
+        this.jitter = jitter;
+        this.minSeparation = minSeparation;
+    }
+
+    @Override
+    public double place (final double[] x, final double[] y, final int count, double boxWidth,
+        SplittableRandom random)
+    {
+        if (count == 0)
+        {
+            return 0;
+        }
+
+        /* The number of columns giving the widest spacing */
+        int bestColumns = 1;
+        double bestSpacing = 0;
+        for (int columns = 1; columns <= 2 * Math.ceil(Math.sqrt(count)) + 2 && columns <= count; columns++)
+        {
+            double spacing = spacing(columns, (count + columns - 1) / columns, boxWidth);
+            if (spacing > bestSpacing)
+            {
+                bestColumns = columns;
+                bestSpacing = spacing;
+            }
+        }
+        final double spacing = bestSpacing;
+        final int columns = bestColumns;
+        final double separation = spacing * (1 - Math.sqrt(2) * jitter);
+        if (separation < minSeparation)
+        {
+            throw new IllegalArgumentException(count + " particles do not fit " + minSeparation
+                + " apart in a box of " + boxWidth);
+        }
+
+        int rows = (count + columns - 1) / columns;
+        final double rowHeight = hexagonal ? spacing * ROW_HEIGHT : spacing;
+        final double amplitude = jitter * spacing;
+        final SplittableRandom[] streams = Streams.split(random, rows);
+        IntStream.range(0, rows).parallel().forEach(new IntConsumer() {
+            @Override
+            public void accept (int row)
+            {
+                SplittableRandom stream = streams[row];
+                double offset = hexagonal && row % 2 == 1 ? 1.0 : 0.5;
+                for (int column = 0, i = row * columns; column < columns && i < count; column++, i++)
+                {
+                    x[i] = (column + offset) * spacing;
+                    y[i] = (row + 0.5) * rowHeight;
+                    if (amplitude > 0)
+                    {
+                        x[i] += amplitude * (stream.nextDouble() - 0.5);
+                        y[i] += amplitude * (stream.nextDouble() - 0.5);
+                    }
+                }
+            }
+        });
+        return separation;
+    }
+
+    /* The widest spacing of a lattice of columns by rows inside the box */
+    private double spacing (int columns, int rows, double boxWidth)
+    {
+        if (hexagonal)
+        {
+            /* Odd rows are shifted by half a spacing */
+            double width = rows > 1 ? columns + 0.5 : columns;
+            return Math.min(boxWidth / width, boxWidth / (rows * ROW_HEIGHT));
+        }
+        return Math.min(boxWidth / columns, boxWidth / rows);
+    }
+}
@@ -0,0 +1,27 @@
+package moleculardynamics.placement;
+
+import java.util.SplittableRandom;
+
+
+/**
+ * Placement
+ * An initial placement of the particles in the square box. The random
+ * numbers come from streams split off one seeded generator in a fixed
+ * order, so that a seed gives the same positions whatever the number of
+ * threads filling them
+ */
+public interface Placement
+{
+    /**
+     * Fill the positions of the particles
+     * @param x The X positions, the first count entries are written
+     * @param y The Y positions, the first count entries are written
+     * @param count The number of particles
+     * @param boxWidth The box width
+     * @param random The generator the streams are split from
+     * @return The smallest distance guaranteed between two particles, 0 if none
+     * @throws IllegalArgumentException If the particles do not fit at the
+     *         minimum separation of the placement
+     */
+    double place (double[] x, double[] y, int count, double boxWidth, SplittableRandom random);
+}
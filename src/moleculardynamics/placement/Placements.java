@@ -0,0 +1,49 @@
+package moleculardynamics.placement;
+
+import moleculardynamics.Parameters;
+import moleculardynamics.SimulationConfig;
+
+
+/**
+ * Placements
+ * Builds the initial placement named by a configuration
+ */
+public final class Placements
+{
+    private Placements ()
+    {
+    }
+
+    /**
+     * @param config The simulation configuration
+     * @return The placement of the configuration
+     */
+    public static Placement create (SimulationConfig config)
+    {
+        return create(config.getPlacement(), config.getMinSeparation());
+    }
+
+    /**
+     * @param name square, hex, jittered, poisson or random
+     * @param minSeparation The smallest distance allowed between two particles
+     * @return The placement
+     */
+    public static Placement create (String name, double minSeparation)
+    {
+        switch (name)
+        {
+            case "square":
+                return new LatticePlacement(false, 0, minSeparation);
+            case "hex":
+                return new LatticePlacement(true, 0, minSeparation);
+            case "jittered":
+                return new LatticePlacement(false, Parameters.PLACEMENT_JITTER, minSeparation);
+            case "poisson":
+                return new PoissonDiskPlacement(minSeparation);
+            case "random":
+                return new UniformPlacement();
+            default:
+                throw new IllegalArgumentException("Unknown placement " + name);
+        }
+    }
+}
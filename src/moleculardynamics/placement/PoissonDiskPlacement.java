@@ -0,0 +1,234 @@
+package moleculardynamics.placement;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+
+/**
+ * Poisson-disk placement
+ * Random positions no closer than a radius, drawn by dart throwing on a
+ * background grid whose cells are radius / sqrt(2) wide, so that a cell
+ * holds at most one point and a dart is only checked against the points
+ * of the cells around it that can hold one within the radius, the 5 x 5
+ * cells on a large box. The darts are thrown at
+ * the empty cells. The grid is split into tiles of TILE x TILE
+ * cells, coloured by the parity of their coordinates: tiles of one colour
+ * are a whole tile apart, wider than the radius, so they are filled in
+ * parallel, one colour after the other, each tile from its own stream.
+ * The radius is the largest for which a saturated packing is expected to
+ * hold the particles, and shrinks down to the minimum separation when the
+ * darts fall short. The particles are a random subset of the points, so
+ * the density is uniform
+ */
+public class PoissonDiskPlacement implements Placement
+{
+    /* Cells per tile side */
+    private static final int TILE = 8;
+    /* Darts thrown at each empty cell, per round */
+    private static final int DARTS = 3;
+    private static final int ROUNDS = 2;
+    /* Points per squared radius of a random sequential packing near saturation */
+    private static final double FILL = 0.6;
+    /* Radius decrease when the points fall short */
+    private static final double SHRINK = 0.95;
+
+    private final double minSeparation;
+
+
+    /**
+     * Create a Poisson-disk placement
+     * @param minSeparation The smallest distance allowed between two particles
+     */
+    public PoissonDiskPlacement (double minSeparation)
+    {
+        this.minSeparation = minSeparation;
+    }
+
+    @Override
+    public double place (double[] x, double[] y, int count, double boxWidth, SplittableRandom random)
+    {
+        if (count == 0)
+        {
+            return 0;
+        }
+        for (double radius = boxWidth * Math.sqrt(FILL / count); ; radius *= SHRINK)
+        {
+            if (radius < minSeparation)
+            {
+                throw new IllegalArgumentException(count + " particles do not fit " + minSeparation
+                    + " apart in a box of " + boxWidth);
+            }
+            Grid grid = new Grid(radius, boxWidth);
+            grid.fill(random.split());
+            if (grid.select(x, y, count, random.split()))
+            {
+                return radius;
+            }
+        }
+    }
+
+    /* Background grid holding at most one point per cell */
+    private static class Grid
+    {
+        final double radius;
+        final double radiusSquared;
+        final double cellWidth;
+        final double boxWidth;
+        final int cells;
+        /* Cells a point within the radius can be away, along one axis */
+        final int reach;
+        /* Row length of the arrays, the grid is padded by reach empty cells on each side */
+        final int stride;
+        /* Offsets of the cells around a cell that can hold a point within the radius, nearest first */
+        final int[] around;
+        final int tiles;
+        final double[] px;
+        final double[] py;
+        final boolean[] taken;
+
+        Grid (double radius, double boxWidth)
+        {
+            this.radius = radius;
+            this.radiusSquared = radius * radius;
+            this.boxWidth = boxWidth;
+            /* Points stay half a radius away from the walls */
+            this.cells = Math.max(1, (int) Math.ceil((boxWidth - radius) / (radius / Math.sqrt(2))));
+            this.cellWidth = (boxWidth - radius) / cells;
+            this.reach = (int) Math.ceil(radius / cellWidth);
+            this.stride = cells + 2 * reach;
+            this.tiles = (cells + TILE - 1) / TILE;
+            this.px = new double[stride * stride];
+            this.py = new double[stride * stride];
+            this.taken = new boolean[stride * stride];
+            int[] offsets = new int[(2 * reach + 1) * (2 * reach + 1)];
+            int k = 0;
+            for (int ring = 0; ring <= reach; ring++)
+            {
+                for (int dj = -ring; dj <= ring; dj++)
+                {
+                    for (int di = -ring; di <= ring; di++)
+                    {
+                        /* Cells whose nearest sides are a radius apart or more are skipped */
+                        double gapX = Math.max(Math.abs(di) - 1, 0) * cellWidth;
+                        double gapY = Math.max(Math.abs(dj) - 1, 0) * cellWidth;
+                        if (Math.max(Math.abs(di), Math.abs(dj)) == ring && gapX * gapX + gapY * gapY < radiusSquared)
+                        {
+                            offsets[k++] = dj * stride + di;
+                        }
+                    }
+                }
+            }
+            this.around = Arrays.copyOf(offsets, k);
+        }
+
+        void fill (SplittableRandom random)
+        {
+            final SplittableRandom[] streams = Streams.split(random, tiles * tiles);
+            for (int round = 0; round < ROUNDS; round++)
+            {
+                for (int colour = 0; colour < 4; colour++)
+                {
+                    final int cx = colour % 2;
+                    final int cy = colour / 2;
+                    final int across = (tiles - cx + 1) / 2;
+                    int down = (tiles - cy + 1) / 2;
+                    IntStream.range(0, across * down).parallel().forEach(new IntConsumer() {
+                        @Override
+                        public void accept (int t)
+                        {
+                            int tx = cx + 2 * (t % across);
+                            int ty = cy + 2 * (t / across);
+                            throwDarts(tx, ty, streams[ty * tiles + tx]);
+                        }
+                    });
+                }
+            }
+        }
+
+        /* Throw the darts of one round at the empty cells of one tile */
+        void throwDarts (int tx, int ty, SplittableRandom stream)
+        {
+            double offset = radius / 2;
+            for (int j = ty * TILE, toY = Math.min(cells, j + TILE); j < toY; j++)
+            {
+                for (int i = tx * TILE, toX = Math.min(cells, i + TILE); i < toX; i++)
+                {
+                    int cell = (j + reach) * stride + i + reach;
+                    for (int dart = 0; dart < DARTS && !taken[cell]; dart++)
+                    {
+                        double u = (i + stream.nextDouble()) * cellWidth + offset;
+                        double v = (j + stream.nextDouble()) * cellWidth + offset;
+                        if (isFree(u, v, cell))
+                        {
+                            px[cell] = u;
+                            py[cell] = v;
+                            taken[cell] = true;
+                        }
+                    }
+                }
+            }
+        }
+
+        /* Whether no point of the cells around is within the radius */
+        boolean isFree (double u, double v, int cell)
+        {
+            for (int k = 0; k < around.length; k++)
+            {
+                int other = cell + around[k];
+                if (taken[other])
+                {
+                    double dx = px[other] - u;
+                    double dy = py[other] - v;
+                    if (dx * dx + dy * dy < radiusSquared)
+                    {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /*
+         * Copy a random subset of count points, in cell order
+         * @return False if there are fewer points
+         */
+        boolean select (double[] x, double[] y, int count, SplittableRandom random)
+        {
+            int total = 0;
+            for (int cell = 0; cell < taken.length; cell++)
+            {
+                if (taken[cell])
+                {
+                    total++;
+                }
+            }
+            if (total < count)
+            {
+                return false;
+            }
+            /* Remove total - count points drawn without replacement, by rejection while they are few */
+            for (int surplus = total - count; surplus > 0; )
+            {
+                int cell = random.nextInt(taken.length);
+                if (taken[cell])
+                {
+                    taken[cell] = false;
+                    surplus--;
+                }
+            }
+            int k = 0;
+            for (int cell = 0; cell < taken.length; cell++)
+            {
+                if (taken[cell])
+                {
+                    x[k] = px[cell];
+                    y[k] = py[cell];
+                    k++;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package moleculardynamics.placement;
+
+import java.util.SplittableRandom;
+
+
+/*
+ * Independent random streams for the parallel parts of a placement
+ */
+final class Streams
+{
+    private Streams ()
+    {
+    }
+
+    /*
+     * Split a number of streams off a generator, in order
+     */
+    static SplittableRandom[] split (SplittableRandom random, int count)
+    {
+        SplittableRandom[] streams = new SplittableRandom[count];
+        for (int s = 0; s < count; s++)
+        {
+            streams[s] = random.split();
+        }
+        return streams;
+    }
+}
@@ -0,0 +1,38 @@
+package moleculardynamics.placement;
+
+import java.util.SplittableRandom;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+
+/**
+ * Uniform placement
+ * Independent uniform positions in the box, with no minimum separation
+ */
+public class UniformPlacement implements Placement
+{
+    /* Particles drawn from one stream */
+    private static final int BLOCK = 4096;
+
+
+    @Override
+    public double place (final double[] x, final double[] y, final int count, final double boxWidth,
+        SplittableRandom random)
+    {
+        int blocks = (count + BLOCK - 1) / BLOCK;
+        final SplittableRandom[] streams = Streams.split(random, blocks);
+        IntStream.range(0, blocks).parallel().forEach(new IntConsumer() {
+            @Override
+            public void accept (int block)
+            {
+                SplittableRandom stream = streams[block];
+                for (int i = block * BLOCK, end = Math.min(count, i + BLOCK); i < end; i++)
+                {
+                    x[i] = stream.nextDouble() * boxWidth;
+                    y[i] = stream.nextDouble() * boxWidth;
+                }
+            }
+        });
+        return 0;
+    }
+}
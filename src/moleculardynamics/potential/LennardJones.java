@@ -0,0 +1,42 @@
+package moleculardynamics.potential;
+
+
+/**
+ * Lennard-Jones potential
+ * U = 4 * epsilon * [(sigma / r)^12 - (sigma / r)^6]
+ * F / r = 24 * epsilon * [2 (sigma / r)^12 - (sigma / r)^6] / r^2
+ * computed with multiplications only
+ */
+public class LennardJones implements PairPotential
+{
+    private final double sigmaSquared;
+    private final double epsilon;
+
+
+    /**
+     * @param sigma The distance at which the potential is zero
+     * @param epsilon The depth of the well
+     */
+    public LennardJones (double sigma, double epsilon)
+    {
+        this.sigmaSquared = sigma * sigma;
+        this.epsilon = epsilon;
+    }
+
+    @Override
+    public double forceOverDistance (double distanceSquared)
+    {
+        double inverse = 1 / distanceSquared;
+        double attract = sigmaSquared * inverse;
+        attract = attract * attract * attract;
+        return 24 * epsilon * (2 * attract * attract - attract) * inverse;
+    }
+
+    @Override
+    public double energy (double distanceSquared)
+    {
+        double attract = sigmaSquared / distanceSquared;
+        attract = attract * attract * attract;
+        return 4 * epsilon * (attract * attract - attract);
+    }
+}
@@ -0,0 +1,58 @@
+package moleculardynamics.potential;
+
+
+/**
+ * Morse potential
+ * U = depth * [(1 - exp(-a (r - r0)))^2 - 1]
+ * F / r = 2 * depth * a * e * (e - 1) / r with e = exp(-a (r - r0))
+ * The exponential needs the distance, so this potential takes one square
+ * root per pair unless it is tabulated
+ */
+public class Morse implements PairPotential
+{
+    private final double depth;
+    private final double stiffness;
+    private final double equilibrium;
+
+
+    /**
+     * @param depth The depth of the well
+     * @param stiffness The inverse width a of the well
+     * @param equilibrium The distance r0 of the minimum
+     */
+    public Morse (double depth, double stiffness, double equilibrium)
+    {
+        this.depth = depth;
+        this.stiffness = stiffness;
+        this.equilibrium = equilibrium;
+    }
+
+    /**
+     * Create the Morse potential with the minimum and the curvature at the
+     * minimum of the Lennard-Jones potential of the same sigma and epsilon
+     * @param sigma The Lennard-Jones sigma
+     * @param epsilon The Lennard-Jones epsilon
+     * @return The Morse potential
+     */
+    public static Morse matching (double sigma, double epsilon)
+    {
+        /* U''(r0) = 2 depth a^2 = 72 * 2^(-1/3) epsilon / sigma^2 for Lennard-Jones */
+        double stiffness = Math.sqrt(36 * Math.pow(2, -1.0 / 3)) / sigma;
+        return new Morse(epsilon, stiffness, Math.pow(2, 1.0 / 6) * sigma);
+    }
+
+    @Override
+    public double forceOverDistance (double distanceSquared)
+    {
+        double distance = Math.sqrt(distanceSquared);
+        double e = Math.exp(-stiffness * (distance - equilibrium));
+        return 2 * depth * stiffness * e * (e - 1) / distance;
+    }
+
+    @Override
+    public double energy (double distanceSquared)
+    {
+        double e = Math.exp(-stiffness * (Math.sqrt(distanceSquared) - equilibrium));
+        return depth * ((1 - e) * (1 - e) - 1);
+    }
+}
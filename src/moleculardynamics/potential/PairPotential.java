@@ -0,0 +1,23 @@
+package moleculardynamics.potential;
+
+
+/**
+ * Pair potential
+ * A central pair interaction evaluated on the squared distance, so that
+ * the kernels need no square root for the usual potentials
+ */
+public interface PairPotential
+{
+    /**
+     * @param distanceSquared The squared distance between the particles
+     * @return The force divided by the distance, positive when repulsive,
+     *         to be multiplied by the separation vector
+     */
+    double forceOverDistance (double distanceSquared);
+
+    /**
+     * @param distanceSquared The squared distance between the particles
+     * @return The pair potential energy, not shifted
+     */
+    double energy (double distanceSquared);
+}
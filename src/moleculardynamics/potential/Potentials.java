@@ -0,0 +1,69 @@
+package moleculardynamics.potential;
+
+import moleculardynamics.Parameters;
+import moleculardynamics.SimulationConfig;
+
+
+/**
+ * Potentials
+ * Builds the pair potential named by a configuration, with the particle
+ * radius as sigma, and wraps it in an interpolated table when asked
+ */
+public final class Potentials
+{
+    /* Pairs closer than this many sigmas use the exact potential */
+    private static final double TABLE_MINIMUM = 0.6;
+
+
+    private Potentials ()
+    {
+    }
+
+    /**
+     * @param config The simulation configuration
+     * @return The pair potential of the configuration
+     */
+    public static PairPotential create (SimulationConfig config)
+    {
+        PairPotential exact = exact(config.getPotential(), config.getParticleRadius(), config.getEpsilon());
+        switch (config.getTable())
+        {
+            case "linear":
+                return tabulate(exact, config, TabulatedPotential.Interpolation.LINEAR);
+            case "cubic":
+                return tabulate(exact, config, TabulatedPotential.Interpolation.CUBIC);
+            default:
+                return exact;
+        }
+    }
+
+    /**
+     * @param name lj, wca, morse or soft
+     * @param sigma The size of the particles
+     * @param epsilon The energy scale
+     * @return The exact pair potential
+     */
+    public static PairPotential exact (String name, double sigma, double epsilon)
+    {
+        switch (name)
+        {
+            case "lj":
+                return new LennardJones(sigma, epsilon);
+            case "wca":
+                return new WeeksChandlerAndersen(sigma, epsilon);
+            case "morse":
+                return Morse.matching(sigma, epsilon);
+            case "soft":
+                return new SoftSphere(sigma, epsilon, 12);
+            default:
+                throw new IllegalArgumentException("Unknown potential " + name);
+        }
+    }
+
+    private static PairPotential tabulate (PairPotential exact, SimulationConfig config,
+        TabulatedPotential.Interpolation interpolation)
+    {
+        double minimum = Math.min(TABLE_MINIMUM * config.getParticleRadius(), 0.5 * config.getForceCutoff());
+        return new TabulatedPotential(exact, minimum, config.getForceCutoff(), Parameters.TABLE_POINTS, interpolation);
+    }
+}
@@ -0,0 +1,50 @@
+package moleculardynamics.potential;
+
+
+/**
+ * Soft-sphere potential
+ * U = epsilon * (sigma / r)^n for an even exponent n
+ * F / r = n * U / r^2
+ * computed with multiplications only
+ */
+public class SoftSphere implements PairPotential
+{
+    private final double sigmaSquared;
+    private final double epsilon;
+    private final int halfExponent;
+
+
+    /**
+     * @param sigma The range
+     * @param epsilon The energy at sigma
+     * @param exponent The even exponent n
+     */
+    public SoftSphere (double sigma, double epsilon, int exponent)
+    {
+        if (exponent <= 0 || exponent % 2 != 0)
+        {
+            throw new IllegalArgumentException("Exponent must be even and positive: " + exponent);
+        }
+        this.sigmaSquared = sigma * sigma;
+        this.epsilon = epsilon;
+        this.halfExponent = exponent / 2;
+    }
+
+    @Override
+    public double forceOverDistance (double distanceSquared)
+    {
+        return 2 * halfExponent * energy(distanceSquared) / distanceSquared;
+    }
+
+    @Override
+    public double energy (double distanceSquared)
+    {
+        double ratio = sigmaSquared / distanceSquared;
+        double result = 1;
+        for (int k = 0; k < halfExponent; k++)
+        {
+            result *= ratio;
+        }
+        return epsilon * result;
+    }
+}
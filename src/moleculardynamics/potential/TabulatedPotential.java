@@ -0,0 +1,140 @@
+package moleculardynamics.potential;
+
+
+/**
+ * Tabulated potential
+ * Samples the force and the energy of another potential on a uniform grid
+ * of squared distances up to the cutoff, and interpolates between the grid
+ * points, linearly or with Catmull-Rom cubics. A lookup is a multiply, a
+ * truncation and a few loads, whatever the cost of the potential.
+ * Distances below the first grid point use the exact potential
+ */
+public class TabulatedPotential implements PairPotential
+{
+    /**
+     * Interpolation between the grid points
+     */
+    public enum Interpolation
+    {
+        LINEAR,
+        CUBIC
+    }
+
+    private final PairPotential exact;
+    private final Interpolation interpolation;
+    private final double minimum;
+    private final double spacingInverse;
+    private final int points;
+    /* One guard point before the grid and two after it, for the cubic stencil */
+    private final double[] force;
+    private final double[] energy;
+
+
+    /**
+     * Tabulate a potential
+     * @param exact The potential
+     * @param minimumDistance The smallest tabulated distance
+     * @param cutoff The largest tabulated distance
+     * @param points The number of grid points
+     * @param interpolation Linear or cubic
+     */
+    public TabulatedPotential (PairPotential exact, double minimumDistance, double cutoff, int points,
+        Interpolation interpolation)
+    {
+        if (points < 2 || minimumDistance <= 0 || cutoff <= minimumDistance)
+        {
+            throw new IllegalArgumentException("Invalid table: " + points + " points from " + minimumDistance
+                + " to " + cutoff);
+        }
+        this.exact = exact;
+        this.interpolation = interpolation;
+        this.points = points;
+        this.minimum = minimumDistance * minimumDistance;
+        double spacing = (cutoff * cutoff - minimum) / (points - 1);
+        this.spacingInverse = 1 / spacing;
+        this.force = new double[points + 3];
+        this.energy = new double[points + 3];
+        for (int k = 0; k < points + 3; k++)
+        {
+            double distanceSquared = Math.max(minimum + (k - 1) * spacing, 0.5 * minimum);
+            force[k] = exact.forceOverDistance(distanceSquared);
+            energy[k] = exact.energy(distanceSquared);
+        }
+    }
+
+    @Override
+    public double forceOverDistance (double distanceSquared)
+    {
+        return lookup(force, distanceSquared);
+    }
+
+    @Override
+    public double energy (double distanceSquared)
+    {
+        if (distanceSquared < minimum)
+        {
+            return exact.energy(distanceSquared);
+        }
+        return lookup(energy, distanceSquared);
+    }
+
+    private double lookup (double[] table, double distanceSquared)
+    {
+        double position = (distanceSquared - minimum) * spacingInverse;
+        if (position < 0)
+        {
+            return table == force ? exact.forceOverDistance(distanceSquared) : exact.energy(distanceSquared);
+        }
+        int k = (int) position;
+        if (k >= points - 1)
+        {
+            k = points - 2;
+        }
+        double t = position - k;
+        /* Entry k + 1 holds grid point k */
+        double p1 = table[k + 1];
+        double p2 = table[k + 2];
+        if (interpolation == Interpolation.LINEAR)
+        {
+            return p1 + t * (p2 - p1);
+        }
+        double p0 = table[k];
+        double p3 = table[k + 3];
+        return p1 + 0.5 * t * (p2 - p0 + t * (2 * p0 - 5 * p1 + 4 * p2 - p3 + t * (3 * (p1 - p2) + p3 - p0)));
+    }
+
+    /**
+     * Compare the table to the exact potential on points between the grid points
+     * @param from The smallest distance compared
+     * @param samples The number of compared distances
+     * @return The largest relative error of the force and of the energy, each
+     *         relative to the largest magnitude over the compared range
+     */
+    public double[] accuracy (double from, int samples)
+    {
+        double cutoffSquared = minimum + (points - 1) / spacingInverse;
+        double fromSquared = Math.max(from * from, minimum);
+        double forceScale = 0, energyScale = 0, forceError = 0, energyError = 0;
+        for (int s = 0; s < samples; s++)
+        {
+            double distanceSquared = fromSquared + (cutoffSquared - fromSquared) * (s + 0.5) / samples;
+            double f = exact.forceOverDistance(distanceSquared);
+            double e = exact.energy(distanceSquared);
+            forceScale = Math.max(forceScale, Math.abs(f));
+            energyScale = Math.max(energyScale, Math.abs(e));
+            forceError = Math.max(forceError, Math.abs(forceOverDistance(distanceSquared) - f));
+            energyError = Math.max(energyError, Math.abs(energy(distanceSquared) - e));
+        }
+        return new double[] { forceError / forceScale, energyError / energyScale };
+    }
+
+    public Interpolation getInterpolation ()
+    {
+        return interpolation;
+    }
+
+    public int getPoints ()
+    {
+        return points;
+    }
+}
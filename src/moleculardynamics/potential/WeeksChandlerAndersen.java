@@ -0,0 +1,39 @@
+package moleculardynamics.potential;
+
+
+/**
+ * Weeks-Chandler-Andersen potential
+ * The repulsive part of Lennard-Jones: cut at its minimum 2^(1/6) sigma
+ * and shifted up by epsilon, so that both the force and the energy reach
+ * zero there
+ */
+public class WeeksChandlerAndersen implements PairPotential
+{
+    private final LennardJones lennardJones;
+    private final double epsilon;
+    private final double rangeSquared;
+
+
+    /**
+     * @param sigma The Lennard-Jones sigma
+     * @param epsilon The Lennard-Jones epsilon
+     */
+    public WeeksChandlerAndersen (double sigma, double epsilon)
+    {
+        this.lennardJones = new LennardJones(sigma, epsilon);
+        this.epsilon = epsilon;
+        this.rangeSquared = Math.pow(2, 1.0 / 3) * sigma * sigma;
+    }
+
+    @Override
+    public double forceOverDistance (double distanceSquared)
+    {
+        return distanceSquared < rangeSquared ? lennardJones.forceOverDistance(distanceSquared) : 0;
+    }
+
+    @Override
+    public double energy (double distanceSquared)
+    {
+        return distanceSquared < rangeSquared ? lennardJones.energy(distanceSquared) + epsilon : 0;
+    }
+}
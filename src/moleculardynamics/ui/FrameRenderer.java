@@ -0,0 +1,180 @@
+package moleculardynamics.ui;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * Frame renderer
+ * Draws render frames into an offscreen image by writing its raster
+ * directly. Each particle is stamped as a precomputed disc, until the
+ * particles outnumber the pixels: the frame is then drawn as a density
+ * heatmap of the particles binned on a coarse grid, whose cost only grows
+ * with the number of particles and pixels. The image is reused between
+ * frames of the same size
+ */
+public class FrameRenderer {
+
+    public static final int BACKGROUND = 0xFFFFFF;
+    public static final int PARTICLE = 0x0000FF;
+    /* Mean number of particles per heatmap bin at the switch */
+    public static final int PARTICLES_PER_BIN = 8;
+
+    private BufferedImage image;
+    private int[] pixels;
+    private int[] bins = new int[0];
+    private int[] colors = new int[0];
+    private int[] disc = new int[0];
+    private int discRadius = -1;
+    private final int[] palette = new int[256];
+    private boolean heatmap;
+    private double lastMillis;
+
+
+    public FrameRenderer() {
+        /* White to blue to dark blue */
+        for (int c = 0; c < palette.length; c++) {
+            double t = c / 255.0;
+            int red = (int) (255 * Math.max(0, 1 - 2 * t));
+            int green = (int) (255 * Math.max(0, 1 - 1.5 * t));
+            int blue = (int) (255 * (t < 0.5 ? 1 : 1.5 - t));
+            palette[c] = (red << 16) | (green << 8) | blue;
+        }
+    }
+
+    /**
+     * Render a frame
+     * @param frame The frame
+     * @param width The image width in pixels
+     * @param height The image height in pixels
+     * @param boxWidth The box width, scaled to the smallest image side
+     * @param radius The particle radius
+     * @return The image, reused by the next call
+     */
+    public BufferedImage render(RenderFrame frame, int width, int height, double boxWidth, double radius) {
+        long start = System.nanoTime();
+        width = Math.max(1, width);
+        height = Math.max(1, height);
+        if (image == null || image.getWidth() != width || image.getHeight() != height) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        }
+        Arrays.fill(pixels, BACKGROUND);
+
+        double scale = Math.min(width, height) / boxWidth;
+        heatmap = frame.getCount() > width * height;
+        if (heatmap) {
+            drawHeatmap(frame, width, height, scale);
+        } else {
+            drawParticles(frame, width, height, scale, Math.max(0, (int) (0.5 * radius * scale)));
+        }
+        lastMillis = (System.nanoTime() - start) / 1e6;
+        return image;
+    }
+
+    private void drawParticles(RenderFrame frame, int width, int height, double scale, int r) {
+        if (r != discRadius) {
+            discRadius = r;
+            /* Offsets packed as (dy << 16) | (dx & 0xFFFF) */
+            int[] offsets = new int[(2 * r + 1) * (2 * r + 1)];
+            int count = 0;
+            for (int dy = -r; dy <= r; dy++) {
+                for (int dx = -r; dx <= r; dx++) {
+                    if (dx * dx + dy * dy <= r * r + r) {
+                        offsets[count++] = (dy << 16) | (dx & 0xFFFF);
+                    }
+                }
+            }
+            disc = Arrays.copyOf(offsets, count);
+        }
+
+        final float[] positions = frame.getPositions();
+        final int[] pixels = this.pixels;
+        final int[] disc = this.disc;
+        for (int i = 0; i < positions.length; i += 2) {
+            int px = (int) (positions[i] * scale);
+            int py = (int) (positions[i + 1] * scale);
+            if (px - discRadius >= 0 && px + discRadius < width && py - discRadius >= 0 && py + discRadius < height) {
+                int center = py * width + px;
+                for (int offset : disc) {
+                    pixels[center + (offset >> 16) * width + (short) offset] = PARTICLE;
+                }
+            } else {
+                for (int offset : disc) {
+                    int x = px + (short) offset;
+                    int y = py + (offset >> 16);
+                    if (x >= 0 && x < width && y >= 0 && y < height) {
+                        pixels[y * width + x] = PARTICLE;
+                    }
+                }
+            }
+        }
+    }
+
+    private void drawHeatmap(RenderFrame frame, int width, int height, double scale) {
+        /* Square bins large enough to hold several particles each */
+        int side = Math.max(1, (int) Math.ceil(Math.sqrt(PARTICLES_PER_BIN * (double) width * height / frame.getCount())));
+        int columns = (width + side - 1) / side;
+        int rows = (height + side - 1) / side;
+        if (bins.length < columns * rows) {
+            bins = new int[columns * rows];
+        }
+        final int[] bins = this.bins;
+        Arrays.fill(bins, 0, columns * rows, 0);
+
+        final float[] positions = frame.getPositions();
+        final float binScale = (float) (scale / side);
+        for (int i = 0; i < positions.length; i += 2) {
+            int bx = (int) (positions[i] * binScale);
+            int by = (int) (positions[i + 1] * binScale);
+            if (bx >= 0 && bx < columns && by >= 0 && by < rows) {
+                bins[by * columns + bx]++;
+            }
+        }
+        int max = 0;
+        for (int b = 0; b < columns * rows; b++) {
+            max = Math.max(max, bins[b]);
+        }
+        if (max == 0) {
+            return;
+        }
+
+        /* Logarithmic colour scale, one logarithm per distinct count */
+        if (colors.length < max + 1) {
+            colors = new int[max + 1];
+        }
+        final double norm = (palette.length - 1) / Math.log1p(max);
+        for (int count = 0; count <= max; count++) {
+            colors[count] = palette[(int) (Math.log1p(count) * norm)];
+        }
+        final int[] pixels = this.pixels;
+        for (int by = 0; by < rows; by++) {
+            for (int bx = 0; bx < columns; bx++) {
+                int count = bins[by * columns + bx];
+                if (count == 0) {
+                    continue;
+                }
+                int color = colors[count];
+                int yEnd = Math.min(height, (by + 1) * side);
+                int xEnd = Math.min(width, (bx + 1) * side);
+                for (int y = by * side; y < yEnd; y++) {
+                    Arrays.fill(pixels, y * width + bx * side, y * width + xEnd, color);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return True if the last frame was drawn as a heatmap
+     */
+    public boolean isHeatmap() {
+        return heatmap;
+    }
+
+    /**
+     * @return The time taken by the last frame in milliseconds
+     */
+    public double getLastMillis() {
+        return lastMillis;
+    }
+}
@@ -3,32 +3,51 @@ package moleculardynamics.ui;
 import java.awt.BorderLayout;
 import java.awt.Button;
 import java.awt.Color;
-import java.awt.Graphics;
+import java.awt.Label;
 import java.awt.Panel;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
 import javax.swing.JPanel;
+import javax.swing.Timer;
 
-import moleculardynamics.Parameters;
+import moleculardynamics.physics.SimulationController;
 import moleculardynamics.physics.UnitCell;
 
 @SuppressWarnings("serial")
-public class InterfaceGraphique extends JPanel implements UnitCellListener {
+public class InterfaceGraphique extends JPanel {
 
-    Panel panelUnitCell;
+    UnitCellView panelUnitCell;
     UnitCell uc;
+    /* Runs and pauses the steps of the unit cell */
+    private final SimulationController controller;
 
-    public static final int SCALE_RADIUS = 10;
-    public static final int SCALE_POSITION = (int) (800 / Parameters.BOX_WIDTH);
+    /* Delay between two repaints, for 60 frames per second */
+    public static final int FRAME_DELAY = 1000 / 60;
+    /* Frames published by the simulation, painted instead of the live particles */
+    private final RenderFrames frames;
+    private Label timeLabel;
 
 
     public InterfaceGraphique(UnitCell uc) { 
         super();
         
         this.uc = uc;
+        this.controller = uc.getController();
+        this.frames = uc.enableRenderFrames();
         
         init();
+
+        /* Repaint at a fixed rate, whatever the step rate */
+        new Timer(FRAME_DELAY, new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent arg0) {
+                /* The time of the latest frame, which costs the simulation no extra copy */
+                timeLabel.setText(String.format("t = %.2f", frames.latest().getTime()));
+                panelUnitCell.repaint();
+            }
+        }).start();
     }
 
 
@@ -47,7 +66,7 @@ public class InterfaceGraphique extends JPanel implements UnitCellListener {
             
             @Override
             public void actionPerformed(ActionEvent arg0) {
-                uc.setPaused(false);                
+                controller.run();
             }
         });
         controlPanel.add(startButton);
@@ -57,34 +76,28 @@ public class InterfaceGraphique extends JPanel implements UnitCellListener {
      
             @Override
             public void actionPerformed(ActionEvent arg0) {
-                uc.setPaused(true);                
+                controller.pause();
             }
         });
         
         controlPanel.add(pauseButton);
-        
-        // UnitCell Panel
-        panelUnitCell = new Panel();
-        add(panelUnitCell, BorderLayout.CENTER);
-    }
 
+        Button stepButton = new Button("Step");
+        stepButton.addActionListener(new ActionListener() {
 
-    public void paint(Graphics g) {
+            @Override
+            public void actionPerformed(ActionEvent arg0) {
+                controller.step();
+            }
+        });
+        controlPanel.add(stepButton);
 
-        Graphics guc = panelUnitCell.getGraphics();
-        guc.clearRect(0, 0, getWidth(), getHeight());
-        guc.setColor(Color.BLUE);
-        for (int i = 0; i < uc.getParticles().size(); i++) {
-            guc.fillOval( (int) (uc.getParticles().get(i).getPosition().getX() * SCALE_POSITION),
-                    (int) (uc.getParticles().get(i).getPosition().getY() * SCALE_POSITION),
-                    (int) (Parameters.PARTICLE_RADIUS * SCALE_RADIUS),
-                    (int) (Parameters.PARTICLE_RADIUS * SCALE_RADIUS));
-        }
+        timeLabel = new Label("t = 0.00");
+        controlPanel.add(timeLabel);
         
-    }
-    
-    public void updateUnitCell() {
-        repaint();
+        // UnitCell Panel
+        panelUnitCell = new UnitCellView(uc, frames);
+        add(panelUnitCell, BorderLayout.CENTER);
     }
 
 
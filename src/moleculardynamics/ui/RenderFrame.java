@@ -0,0 +1,54 @@
+package moleculardynamics.ui;
+
+/**
+ * Render frame
+ * The positions of the particles at one step, packed as x0, y0, x1, y1...
+ * A frame handed to the UI by RenderFrames is not written until the UI
+ * takes a newer one
+ */
+public final class RenderFrame {
+
+    private final float[] positions;
+    private long step;
+    private double time;
+
+
+    RenderFrame(int particles) {
+        positions = new float[2 * particles];
+    }
+
+    /*
+     * Copy the positions of one step
+     */
+    void fill(long step, double time, double[] x, double[] y) {
+        this.step = step;
+        this.time = time;
+        final float[] positions = this.positions;
+        for (int i = 0, n = positions.length / 2; i < n; i++) {
+            positions[2 * i] = (float) x[i];
+            positions[2 * i + 1] = (float) y[i];
+        }
+    }
+
+    /**
+     * @return The packed positions, not to be modified
+     */
+    public float[] getPositions() {
+        return positions;
+    }
+
+    /**
+     * @return The number of particles
+     */
+    public int getCount() {
+        return positions.length / 2;
+    }
+
+    public long getStep() {
+        return step;
+    }
+
+    public double getTime() {
+        return time;
+    }
+}
@@ -0,0 +1,61 @@
+package moleculardynamics.ui;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import moleculardynamics.physics.ParticleStore;
+
+/**
+ * Render frames
+ * Triple buffer of render frames between the simulation and the UI. The
+ * simulation fills a spare frame at a step boundary and swaps it with the
+ * published one, the UI swaps the published frame with the one it painted.
+ * Neither side waits for or locks the other, and nothing is allocated.
+ * Every step is published, replacing a frame the UI did not take yet, so
+ * that the UI always paints the latest step
+ */
+public class RenderFrames {
+
+    private static final int INDEX = 3;
+    private static final int FRESH = 4;
+
+    private final RenderFrame[] frames;
+    /* Index of the published frame, with FRESH set until the UI takes it */
+    private final AtomicInteger published;
+    /* Owned by the simulation */
+    private int spare = 1;
+    /* Owned by the UI */
+    private int painted = 2;
+
+
+    /**
+     * Create the frames of a number of particles
+     * @param particles The number of particles
+     */
+    public RenderFrames(int particles) {
+        frames = new RenderFrame[] { new RenderFrame(particles), new RenderFrame(particles), new RenderFrame(particles) };
+        published = new AtomicInteger(0);
+    }
+
+    /**
+     * Publish the current positions. The previous frame, taken by the UI or
+     * not, becomes the spare
+     * @param step The step number
+     * @param time The simulated time
+     * @param store The particle state, read from its current buffers
+     */
+    public void publish(long step, double time, ParticleStore store) {
+        frames[spare].fill(step, time, store.getX(), store.getY());
+        spare = published.getAndSet(spare | FRESH) & INDEX;
+    }
+
+    /**
+     * Called from the UI thread only
+     * @return The latest published frame, kept unchanged until the next call
+     */
+    public RenderFrame latest() {
+        if ((published.get() & FRESH) != 0) {
+            painted = published.getAndSet(painted) & INDEX;
+        }
+        return frames[painted];
+    }
+}
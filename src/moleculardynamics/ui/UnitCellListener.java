@@ -1,6 +0,0 @@
-package moleculardynamics.ui;
-
-public interface UnitCellListener {
-
-    public void updateUnitCell();
-}
@@ -0,0 +1,43 @@
+package moleculardynamics.ui;
+
+import java.awt.Color;
+import java.awt.Graphics;
+
+import javax.swing.JPanel;
+
+import moleculardynamics.physics.UnitCell;
+
+/**
+ * Unit cell view
+ * Paints the latest render frame of a unit cell through an offscreen
+ * image, so that a repaint is a single image copy and never flickers
+ */
+@SuppressWarnings("serial")
+public class UnitCellView extends JPanel {
+
+    private final UnitCell uc;
+    private final RenderFrames frames;
+    private final FrameRenderer renderer = new FrameRenderer();
+
+
+    public UnitCellView(UnitCell uc, RenderFrames frames) {
+        super();
+        this.uc = uc;
+        this.frames = frames;
+        setOpaque(true);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        RenderFrame frame = frames.latest();
+        g.drawImage(renderer.render(frame, getWidth(), getHeight(), uc.getBoxWidth(),
+                uc.getConfig().getParticleRadius()), 0, 0, null);
+        g.setColor(Color.DARK_GRAY);
+        g.drawString(String.format("T= %.2f  %s  %.1f ms", frame.getTime(),
+                renderer.isHeatmap() ? "density" : "particles", renderer.getLastMillis()), 5, 15);
+    }
+
+    public FrameRenderer getRenderer() {
+        return renderer;
+    }
+}
@@ -0,0 +1,93 @@
+package moleculardynamics;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import moleculardynamics.io.CheckpointTest;
+import moleculardynamics.io.TrajectoryTest;
+import moleculardynamics.maths.RunningStatisticsTest;
+import moleculardynamics.physics.PoolEngineTest;
+import moleculardynamics.physics.RadialDistributionTest;
+import moleculardynamics.physics.StepPublisherTest;
+import moleculardynamics.placement.PlacementTest;
+import moleculardynamics.potential.PotentialTest;
+import moleculardynamics.ui.RenderFramesTest;
+
+
+/**
+ * Test runner
+ * Runs every public no-argument method whose name starts with "test" on a
+ * new instance of each test class, prints one line per test, and exits
+ * with status 1 if any failed:
+ *
+ *   java -ea -Djava.awt.headless=true moleculardynamics.AllTests [class name]...
+ *
+ * With class names, only those classes run
+ */
+public class AllTests
+{
+    private static final Class<?>[] CLASSES = {
+        SimulationConfigTest.class, RunningStatisticsTest.class, PlacementTest.class, PotentialTest.class, TrajectoryTest.class,
+        CheckpointTest.class, StepPublisherTest.class, RenderFramesTest.class, RadialDistributionTest.class,
+        PoolEngineTest.class
+    };
+
+
+    /**
+     * Main function. Runs the tests
+     */
+    public static void main (String[] args) throws ReflectiveOperationException
+    {
+        List<Class<?>> classes = new ArrayList<Class<?>>();
+        if (args.length == 0)
+        {
+            classes.addAll(Arrays.asList(CLASSES));
+        }
+        for (String name : args)
+        {
+            classes.add(Class.forName(name));
+        }
+
+        int run = 0;
+        int failed = 0;
+        for (Class<?> type : classes)
+        {
+            Method[] methods = type.getMethods();
+            Arrays.sort(methods, new Comparator<Method>() {
+                public int compare (Method a, Method b)
+                {
+                    return a.getName().compareTo(b.getName());
+                }
+            });
+            for (Method method : methods)
+            {
+                if (!method.getName().startsWith("test") || method.getParameterCount() != 0
+                    || Modifier.isStatic(method.getModifiers()))
+                {
+                    continue;
+                }
+                run++;
+                String name = type.getSimpleName() + "." + method.getName();
+                long start = System.nanoTime();
+                try
+                {
+                    method.invoke(type.getDeclaredConstructor().newInstance());
+                    System.out.println(String.format("ok\t%s\t%.0f ms", name, (System.nanoTime() - start) / 1e6));
+                }
+                catch (InvocationTargetException e)
+                {
+                    failed++;
+                    System.out.println("FAIL\t" + name);
+                    e.getCause().printStackTrace(System.out);
+                }
+            }
+        }
+        System.out.println(String.format("%d tests, %d failed", run, failed));
+        System.exit(failed > 0 ? 1 : 0);
+    }
+}
@@ -0,0 +1,77 @@
+package moleculardynamics;
+
+
+/**
+ * Assertions of the tests
+ * Each failed assertion throws an AssertionError with its message, which
+ * AllTests reports with the name of the failed test
+ */
+public final class Assert
+{
+    private Assert ()
+    {
+    }
+
+    public static void fail (String message)
+    {
+        throw new AssertionError(message);
+    }
+
+    public static void assertTrue (String message, boolean condition)
+    {
+        if (!condition)
+        {
+            fail(message);
+        }
+    }
+
+    public static void assertEquals (String message, long expected, long actual)
+    {
+        if (expected != actual)
+        {
+            fail(message + ": expected " + expected + " but was " + actual);
+        }
+    }
+
+    /**
+     * @param tolerance The largest absolute difference accepted
+     */
+    public static void assertEquals (String message, double expected, double actual, double tolerance)
+    {
+        if (!(Math.abs(expected - actual) <= tolerance))
+        {
+            fail(message + ": expected " + expected + " but was " + actual);
+        }
+    }
+
+    /**
+     * Run some code expected to throw
+     * @param expected The type of the expected exception
+     * @param code The code
+     * @return The exception thrown
+     */
+    public static <T extends Throwable> T assertThrows (Class<T> expected, Code code)
+    {
+        try
+        {
+            code.run();
+        }
+        catch (Throwable e)
+        {
+            if (expected.isInstance(e))
+            {
+                return expected.cast(e);
+            }
+            throw new AssertionError("Expected " + expected.getSimpleName() + " but caught " + e, e);
+        }
+        throw new AssertionError("Expected " + expected.getSimpleName() + " but nothing was thrown");
+    }
+
+    /**
+     * Code run by assertThrows
+     */
+    public interface Code
+    {
+        void run () throws Exception;
+    }
+}
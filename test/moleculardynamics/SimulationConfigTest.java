@@ -0,0 +1,87 @@
+package moleculardynamics;
+
+import static moleculardynamics.Assert.assertEquals;
+import static moleculardynamics.Assert.assertThrows;
+import static moleculardynamics.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+
+/**
+ * Tests of SimulationConfig: JSON files load whole quoted values, and
+ * malformed files, values that are not numbers and options without a value
+ * are rejected
+ */
+public class SimulationConfigTest
+{
+    public void testJsonQuotedValues () throws IOException
+    {
+        SimulationConfig config = loadJson("{\n  \"respaSteps\": 2, \"respaOuter\": \"walls, gravity\",\n"
+            + "  \"dt\": 0.005, \"adaptiveDt\": true, \"potential\": \"w\\u0063a\" }");
+        assertTrue("outer walls", config.isRespaOuter("walls"));
+        assertTrue("outer gravity", config.isRespaOuter("gravity"));
+        assertEquals("dt", 0.005, config.getDt(), 0);
+        assertTrue("adaptive", config.isAdaptiveDt());
+        assertTrue("escaped potential", config.getPotential().equals("wca"));
+        assertEquals("default count", Parameters.PARTICLE_COUNT, loadJson(" { } ").getParticleCount());
+    }
+
+    public void testJsonRejectsUnparsedInput ()
+    {
+        for (final String json : new String[] { "\"dt\": 0.01", "{ \"dt\": 0.01 \"tf\": 2 }", "{ \"dt\": 0.01, }",
+            "{ \"dt\": [0.01] }", "{ \"tf\": \"2 }", "{ \"seed\": 3 } trailing" })
+        {
+            assertThrows(IllegalArgumentException.class, new Assert.Code() {
+                public void run () throws IOException
+                {
+                    loadJson(json);
+                }
+            });
+        }
+    }
+
+    public void testRejectsNotANumber ()
+    {
+        for (final String key : new String[] { SimulationConfig.DT, SimulationConfig.TF, SimulationConfig.FORCECUTOFF })
+        {
+            for (final String value : new String[] { "NaN", "Infinity" })
+            {
+                assertThrows(IllegalArgumentException.class, new Assert.Code() {
+                    public void run () throws IOException
+                    {
+                        SimulationConfig.fromArgs(new String[] { "-" + key, value });
+                    }
+                });
+            }
+        }
+    }
+
+    public void testRejectsOptionWithoutValue () throws IOException
+    {
+        assertEquals("dt", 0.005, SimulationConfig.fromArgs(new String[] { "-dt", "0.005" }).getDt(), 0);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, new Assert.Code() {
+            public void run () throws IOException
+            {
+                SimulationConfig.fromArgs(new String[] { "-dt", "0.005", "-tf" });
+            }
+        });
+        assertTrue("message " + e.getMessage(), e.getMessage().contains("-tf"));
+    }
+
+    private static SimulationConfig loadJson (String json) throws IOException
+    {
+        Path path = Files.createTempFile("config", ".json");
+        try
+        {
+            Files.write(path, json.getBytes(StandardCharsets.UTF_8));
+            return SimulationConfig.load(path.toString());
+        }
+        finally
+        {
+            Files.delete(path);
+        }
+    }
+}
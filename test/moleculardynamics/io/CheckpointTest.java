@@ -0,0 +1,105 @@
+package moleculardynamics.io;
+
+import static moleculardynamics.Assert.assertEquals;
+import static moleculardynamics.Assert.assertThrows;
+import static moleculardynamics.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import moleculardynamics.Assert;
+import moleculardynamics.SimulationConfig;
+import moleculardynamics.physics.ParticleStore;
+import moleculardynamics.physics.UnitCell;
+
+
+/**
+ * Tests of Checkpoint: a restored unit cell continues bit for bit, its
+ * positions are the saved ones, not those of its placement, and a failed
+ * write leaves no temporary file
+ */
+public class CheckpointTest
+{
+    public void testRoundTripContinuesBitForBit () throws IOException
+    {
+        for (String skin : new String[] { "0", "0.3" })
+        {
+            SimulationConfig config = new SimulationConfig().with(SimulationConfig.PARTICLE_COUNT, "300")
+                .with(SimulationConfig.PLACEMENT, "poisson").with(SimulationConfig.NEIGHBOR_SKIN, skin)
+                .with(SimulationConfig.TF, "1e9");
+            UnitCell original = new UnitCell(config);
+            original.useWorkerPool(1);
+            original.step(40);
+            Path path = Files.createTempFile("checkpoint", ".bin");
+            try
+            {
+                Checkpoint.write(original, path);
+                original.step(40);
+                UnitCell restored = Checkpoint.read(path);
+                assertEquals("step count", 40, restored.getStepCount());
+                assertEquals("neighbour list", original.getNeighborList() != null ? 1 : 0,
+                    restored.getNeighborList() != null ? 1 : 0);
+                restored.step(40);
+                ParticleStore a = original.getStore(), b = restored.getStore();
+                assertTrue("skin " + skin + " x", Arrays.equals(a.getX(), b.getX()));
+                assertTrue("skin " + skin + " vy", Arrays.equals(a.getVy(), b.getVy()));
+                assertEquals("time", original.getElapsedTime(), restored.getElapsedTime(), 0);
+                original.getEngine().shutdown();
+                restored.getEngine().shutdown();
+            }
+            finally
+            {
+                Files.delete(path);
+            }
+        }
+    }
+
+    public void testRestoresSavedPositions () throws IOException
+    {
+        UnitCell original = new UnitCell(new SimulationConfig().with(SimulationConfig.PARTICLE_COUNT, "50"));
+        ParticleStore store = original.getStore();
+        for (int i = 0; i < 50; i++)
+        {
+            store.getX()[i] = 1 + i * 0.5;
+            store.getY()[i] = 2;
+        }
+        Path path = Files.createTempFile("checkpoint", ".bin");
+        try
+        {
+            Checkpoint.write(original, path);
+            UnitCell restored = Checkpoint.read(path);
+            assertTrue("x", Arrays.equals(store.getX(), restored.getStore().getX()));
+            assertTrue("y", Arrays.equals(store.getY(), restored.getStore().getY()));
+            assertTrue("no temporary file left", !Files.exists(path.resolveSibling(path.getFileName() + ".tmp")));
+        }
+        finally
+        {
+            Files.delete(path);
+        }
+    }
+
+    public void testFailedWriteLeavesNoTemporaryFile () throws IOException
+    {
+        final UnitCell unitCell = new UnitCell(new SimulationConfig().with(SimulationConfig.PARTICLE_COUNT, "50"));
+        /* A directory that is not empty cannot be replaced by the rename */
+        final Path path = Files.createTempDirectory("checkpoint");
+        Path inside = Files.createFile(path.resolve("inside"));
+        try
+        {
+            assertThrows(IOException.class, new Assert.Code() {
+                public void run () throws IOException
+                {
+                    Checkpoint.write(unitCell, path);
+                }
+            });
+            assertTrue("temporary file left", !Files.exists(path.resolveSibling(path.getFileName() + ".tmp")));
+        }
+        finally
+        {
+            Files.delete(inside);
+            Files.delete(path);
+        }
+    }
+}
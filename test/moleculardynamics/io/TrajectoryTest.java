@@ -0,0 +1,162 @@
+package moleculardynamics.io;
+
+import static moleculardynamics.Assert.assertEquals;
+import static moleculardynamics.Assert.assertThrows;
+import static moleculardynamics.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import moleculardynamics.Assert;
+
+
+/**
+ * Tests of TrajectoryWriter and TrajectoryReader: the frames read back are
+ * the frames written, rounded to floats, with or without the index, and an
+ * adaptive time step is flagged
+ */
+public class TrajectoryTest
+{
+    private static final int PARTICLES = 37;
+
+
+    public void testRoundTrip () throws IOException
+    {
+        Path path = Files.createTempFile("trajectory", ".bin");
+        try
+        {
+            write(path, 5, true, false);
+            try (TrajectoryReader reader = new TrajectoryReader(path))
+            {
+                assertEquals("particles", PARTICLES, reader.getParticles());
+                assertEquals("stride", 3, reader.getStride());
+                assertEquals("frames", 5, reader.getFrameCount());
+                assertEquals("box width", 12.5, reader.getBoxWidth(), 0);
+                assertEquals("dt", 0.01, reader.getDt(), 0);
+                assertTrue("adaptive", !reader.isAdaptiveDt());
+                checkFrames(reader, 5);
+            }
+        }
+        finally
+        {
+            Files.delete(path);
+        }
+    }
+
+    public void testUnclosedFileReadsWholeFrames () throws IOException
+    {
+        Path path = Files.createTempFile("trajectory", ".bin");
+        try
+        {
+            write(path, 4, false, false);
+            /* Half a frame written by a crash */
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND))
+            {
+                channel.write(java.nio.ByteBuffer.allocate((int) TrajectoryWriter.frameBytes(PARTICLES) / 2));
+            }
+            try (TrajectoryReader reader = new TrajectoryReader(path))
+            {
+                assertEquals("frames", 4, reader.getFrameCount());
+                checkFrames(reader, 4);
+            }
+        }
+        finally
+        {
+            Files.delete(path);
+        }
+    }
+
+    public void testAdaptiveDtIsFlagged () throws IOException
+    {
+        Path path = Files.createTempFile("trajectory", ".bin");
+        try
+        {
+            write(path, 3, true, true);
+            try (TrajectoryReader reader = new TrajectoryReader(path))
+            {
+                assertTrue("adaptive", reader.isAdaptiveDt());
+                checkFrames(reader, 3);
+            }
+        }
+        finally
+        {
+            Files.delete(path);
+        }
+    }
+
+    public void testFrameSizeDoesNotOverflow ()
+    {
+        assertEquals("bytes of 2^28 particles", 16 + (1L << 32), TrajectoryWriter.frameBytes(1 << 28));
+        assertThrows(IllegalArgumentException.class, new Assert.Code() {
+            public void run () throws IOException
+            {
+                new TrajectoryWriter(Paths.get("unused"), 1 << 28, 1, 0.01, false, 1);
+            }
+        });
+    }
+
+    public void testNotATrajectory () throws IOException
+    {
+        Path path = Files.createTempFile("trajectory", ".bin");
+        try
+        {
+            Files.write(path, new byte[TrajectoryWriter.HEADER_BYTES]);
+            try
+            {
+                new TrajectoryReader(path).close();
+                assertTrue("read a file of zeros", false);
+            }
+            catch (IOException e)
+            {
+                /* Expected */
+            }
+        }
+        finally
+        {
+            Files.delete(path);
+        }
+    }
+
+    /* Frame f of particle i has the position (i + f, 2 i), the velocity (f / 4, -i) */
+    private static void write (Path path, int frames, boolean close, boolean adaptiveDt) throws IOException
+    {
+        TrajectoryWriter writer = new TrajectoryWriter(path, PARTICLES, 12.5, 0.01, adaptiveDt, 3);
+        double[] x = new double[PARTICLES], y = new double[PARTICLES], vx = new double[PARTICLES], vy = new double[PARTICLES];
+        for (int f = 0; f < frames; f++)
+        {
+            for (int i = 0; i < PARTICLES; i++)
+            {
+                x[i] = i + f + 0.1;
+                y[i] = 2 * i;
+                vx[i] = f / 4.0;
+                vy[i] = -i;
+            }
+            writer.write(3L * f, 0.03 * f, x, y, vx, vy);
+        }
+        if (close)
+        {
+            writer.close();
+        }
+    }
+
+    private static void checkFrames (TrajectoryReader reader, int frames) throws IOException
+    {
+        float[] x = new float[PARTICLES], y = new float[PARTICLES], vx = new float[PARTICLES], vy = new float[PARTICLES];
+        for (int f = 0; f < frames; f++)
+        {
+            assertEquals("step", 3L * f, reader.read(f, x, y, vx, vy));
+            assertEquals("time", 0.03 * f, reader.getTime(f), 0);
+            for (int i = 0; i < PARTICLES; i++)
+            {
+                assertEquals("x", (float) (i + f + 0.1), x[i], 0);
+                assertEquals("y", 2 * i, y[i], 0);
+                assertEquals("vx", f / 4.0, vx[i], 0);
+                assertEquals("vy", -i, vy[i], 0);
+            }
+        }
+    }
+}
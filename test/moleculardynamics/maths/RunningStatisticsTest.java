@@ -0,0 +1,57 @@
+package moleculardynamics.maths;
+
+import static moleculardynamics.Assert.assertEquals;
+
+
+/**
+ * Tests of RunningStatistics
+ */
+public class RunningStatisticsTest
+{
+    public void testMeanAndSampleVariance ()
+    {
+        RunningStatistics statistics = new RunningStatistics();
+        for (double value : new double[] { 2, 4, 4, 4, 5, 5, 7, 9 })
+        {
+            statistics.add(value);
+        }
+        assertEquals("count", 8, statistics.getCount());
+        assertEquals("mean", 5, statistics.getMean(), 1e-12);
+        assertEquals("variance", 32.0 / 7, statistics.getVariance(), 1e-12);
+        assertEquals("deviation", Math.sqrt(32.0 / 7), statistics.getStandardDeviation(), 1e-12);
+    }
+
+    public void testNoVarianceBelowTwoValues ()
+    {
+        RunningStatistics statistics = new RunningStatistics();
+        assertEquals("empty variance", 0, statistics.getVariance(), 0);
+        statistics.add(3);
+        assertEquals("single mean", 3, statistics.getMean(), 0);
+        assertEquals("single variance", 0, statistics.getVariance(), 0);
+    }
+
+    public void testLargeOffsetKeepsPrecision ()
+    {
+        /* The naive sum of squares loses every digit here */
+        RunningStatistics statistics = new RunningStatistics();
+        for (int i = 0; i < 1000; i++)
+        {
+            statistics.add(1e9 + (i % 2));
+        }
+        assertEquals("mean", 1e9 + 0.5, statistics.getMean(), 1e-6);
+        assertEquals("variance", 0.25 * 1000 / 999, statistics.getVariance(), 1e-9);
+    }
+
+    public void testClear ()
+    {
+        RunningStatistics statistics = new RunningStatistics();
+        statistics.add(1);
+        statistics.add(5);
+        statistics.clear();
+        statistics.add(2);
+        statistics.add(4);
+        assertEquals("count", 2, statistics.getCount());
+        assertEquals("mean", 3, statistics.getMean(), 1e-12);
+        assertEquals("variance", 2, statistics.getVariance(), 1e-12);
+    }
+}
@@ -0,0 +1,119 @@
+package moleculardynamics.physics;
+
+import static moleculardynamics.Assert.assertEquals;
+import static moleculardynamics.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import moleculardynamics.SimulationConfig;
+import moleculardynamics.potential.PairPotential;
+
+
+/**
+ * Tests of PoolEngine: whatever the number of chunks, the forces are those
+ * of every pair, each pair is observed once, and the neighbour list rebuilt
+ * in parallel is the one a serial build gives
+ */
+public class PoolEngineTest
+{
+    /* Random placement, so that most pairs cross two chunks */
+    private static final SimulationConfig CONFIG = new SimulationConfig().with(SimulationConfig.PARTICLE_COUNT, "400")
+        .with(SimulationConfig.BOX_WIDTH, "30").with(SimulationConfig.PLACEMENT, "poisson")
+        .with(SimulationConfig.SEED, "5").with(SimulationConfig.TF, "1e9");
+
+
+    public void testForcesMatchEveryPair ()
+    {
+        for (String skin : new String[] { "0", "0.3" })
+        {
+            for (int chunks : new int[] { 1, 3, 7 })
+            {
+                UnitCell unitCell = new UnitCell(CONFIG.with(SimulationConfig.NEIGHBOR_SKIN, skin));
+                unitCell.useWorkerPool(chunks);
+                unitCell.getEngine().integrate();
+                unitCell.getEngine().computeForces();
+                checkForces("skin " + skin + ", " + chunks + " chunks", unitCell);
+                unitCell.getEngine().shutdown();
+            }
+        }
+    }
+
+    public void testSameStepsWhateverTheChunks ()
+    {
+        for (SimulationConfig config : new SimulationConfig[] { CONFIG, CONFIG.with(SimulationConfig.NEIGHBOR_SKIN, "0.3"),
+            CONFIG.with(SimulationConfig.RESPA_STEPS, "2") })
+        {
+            UnitCell one = run(config, 1, 20);
+            UnitCell four = run(config, 4, 20);
+            double[] x1 = one.getStore().getX(), x4 = four.getStore().getX();
+            for (int i = 0; i < x1.length; i++)
+            {
+                assertEquals("x of " + i, x1[i], x4[i], 1e-9);
+            }
+            for (Observables.Quantity quantity : Observables.Quantity.values())
+            {
+                double expected = one.getObservables().get(quantity);
+                assertEquals(quantity.toString(), expected, four.getObservables().get(quantity), 1e-9 * Math.abs(expected));
+            }
+            assertTrue("distances", Arrays.equals(one.getRadialDistribution().normalized(),
+                four.getRadialDistribution().normalized()));
+        }
+    }
+
+    public void testParallelRebuildMatchesSerialBuild ()
+    {
+        UnitCell unitCell = run(CONFIG.with(SimulationConfig.NEIGHBOR_SKIN, "0.2"), 3, 200);
+        NeighborList parallel = unitCell.getNeighborList();
+        assertTrue("rebuilds " + parallel.getRebuilds(), parallel.getRebuilds() > 1);
+        NeighborList serial = new NeighborList(CONFIG.getBoxWidth(), CONFIG.getForceCutoff(), 0.2, 3);
+        int n = unitCell.getStore().size();
+        serial.build(parallel.getReferenceX(), parallel.getReferenceY(), n);
+        for (int i = 0; i < n; i++)
+        {
+            assertEquals("start of " + i, serial.getStart(i), parallel.getStart(i));
+            assertEquals("end of " + i, serial.getEnd(i), parallel.getEnd(i));
+        }
+        assertTrue("neighbours", Arrays.equals(Arrays.copyOf(serial.getNeighbors(), serial.getEnd(n - 1)),
+            Arrays.copyOf(parallel.getNeighbors(), parallel.getEnd(n - 1))));
+    }
+
+    private static UnitCell run (SimulationConfig config, int chunks, int steps)
+    {
+        UnitCell unitCell = new UnitCell(config);
+        unitCell.useWorkerPool(chunks);
+        unitCell.enableObservables(1);
+        unitCell.enableRadialDistribution(0.1, 1);
+        unitCell.step(steps);
+        unitCell.getEngine().shutdown();
+        return unitCell;
+    }
+
+    /* The new accelerations against a sum over every pair */
+    private static void checkForces (String name, UnitCell unitCell)
+    {
+        ParticleStore store = unitCell.getStore();
+        ForceKernel kernel = unitCell.getForceKernel();
+        PairPotential potential = kernel.getPairPotential();
+        double[] x = store.getNextX(), y = store.getNextY();
+        double cutoffSquared = CONFIG.getForceCutoff() * CONFIG.getForceCutoff();
+        for (int i = 0; i < store.size(); i++)
+        {
+            double ax = kernel.wall(x[i]);
+            double ay = kernel.wall(y[i]) - kernel.getGravity();
+            for (int j = 0; j < store.size(); j++)
+            {
+                double dx = x[i] - x[j];
+                double dy = y[i] - y[j];
+                double distanceSquared = dx * dx + dy * dy;
+                if (j != i && distanceSquared < cutoffSquared)
+                {
+                    double f = potential.forceOverDistance(distanceSquared);
+                    ax += f * dx;
+                    ay += f * dy;
+                }
+            }
+            assertEquals(name + ", ax of " + i, ax, store.getNextAx()[i], 1e-9 * Math.max(1, Math.abs(ax)));
+            assertEquals(name + ", ay of " + i, ay, store.getNextAy()[i], 1e-9 * Math.max(1, Math.abs(ay)));
+        }
+    }
+}
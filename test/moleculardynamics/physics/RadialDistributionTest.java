@@ -0,0 +1,34 @@
+package moleculardynamics.physics;
+
+import static moleculardynamics.Assert.assertEquals;
+
+
+/**
+ * Tests of RadialDistribution: an ideal gas count gives g(r) = 1 in every
+ * bin, including a last bin cut short by the cutoff
+ */
+public class RadialDistributionTest
+{
+    public void testPartialLastBinIsNormalizedToTheCutoff ()
+    {
+        int particles = 2000;
+        double area = 1;
+        RadialDistribution distribution = new RadialDistribution(1, 2.5, 1);
+        long[] histogram = distribution.createHistogram();
+        assertEquals("bins", 3, histogram.length);
+
+        /* Pairs of an ideal gas in the rings [0, 1), [1, 2) and [2, 2.5) */
+        double[] edges = { 0, 1, 2, 2.5 };
+        for (int b = 0; b < histogram.length; b++)
+        {
+            double ring = Math.PI * (edges[b + 1] * edges[b + 1] - edges[b] * edges[b]);
+            histogram[b] = Math.round(0.5 * particles * (particles / area) * ring);
+        }
+        distribution.merge(new long[][] { histogram }, particles, area);
+        double[] g = distribution.normalized();
+        for (int b = 0; b < g.length; b++)
+        {
+            assertEquals("g of bin " + b, 1, g[b], 1e-6);
+        }
+    }
+}
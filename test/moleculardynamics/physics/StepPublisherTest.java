@@ -0,0 +1,205 @@
+package moleculardynamics.physics;
+
+import static moleculardynamics.Assert.assertEquals;
+import static moleculardynamics.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import moleculardynamics.SimulationConfig;
+
+
+/**
+ * Tests of StepPublisher: the subscribers receive no more events than they
+ * requested, lose steps by their policy when they fall behind, receive
+ * nothing once cancelled, and the completion at the final time. The events
+ * are copied into pooled buffers
+ */
+public class StepPublisherTest
+{
+    /* Delivers on the offering thread, so that its allocations include the deliveries */
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute (Runnable task)
+        {
+            task.run();
+        }
+    };
+
+    public void testCompletesAtFinalTime () throws InterruptedException
+    {
+        /* Exact binary fractions, ten steps reach the final time */
+        UnitCell unitCell = new UnitCell(new SimulationConfig().with(SimulationConfig.PARTICLE_COUNT, "20")
+            .with(SimulationConfig.DT, "0.25").with(SimulationConfig.TF, "2.5"));
+        unitCell.useWorkerPool(1);
+        Recorder recorder = new Recorder(Long.MAX_VALUE);
+        unitCell.enableStepEvents().subscribe(recorder, StepPublisher.Policy.BUFFER, 16);
+        unitCell.step(15);
+        assertTrue("no completion", recorder.completed.await(10, TimeUnit.SECONDS));
+        assertEquals("completions", 1, recorder.completions.get());
+        assertEquals("events", 10, recorder.received.get());
+        assertEquals("last step", 10, recorder.lastStep);
+        unitCell.getEngine().shutdown();
+    }
+
+    public void testRequestBoundsDeliveries ()
+    {
+        StepPublisher publisher = new StepPublisher(DIRECT);
+        Recorder recorder = new Recorder(2);
+        publisher.subscribe(recorder, StepPublisher.Policy.BUFFER, 100);
+        offer(publisher, new ParticleStore(10), 0, 5);
+        assertEquals("events of the first request", 2, recorder.received.get());
+        recorder.subscription.request(2);
+        assertEquals("events of both requests", 4, recorder.received.get());
+        assertEquals("last step", 3, recorder.lastStep);
+        publisher.close();
+        assertEquals("completed before its last event", 0, recorder.completions.get());
+        recorder.subscription.request(1);
+        assertEquals("last event", 5, recorder.received.get());
+        assertEquals("completions", 1, recorder.completions.get());
+    }
+
+    public void testLatestTakesTheStepAfterItsRequest ()
+    {
+        StepPublisher publisher = new StepPublisher(DIRECT);
+        ParticleStore store = new ParticleStore(10);
+        Recorder recorder = new Recorder(1);
+        publisher.subscribe(recorder);
+        offer(publisher, store, 0, 5);
+        assertEquals("events", 1, recorder.received.get());
+        assertEquals("copied steps", 1, publisher.getPublished());
+        recorder.subscription.request(1);
+        offer(publisher, store, 5, 3);
+        assertEquals("step after the request", 5, recorder.lastStep);
+        assertEquals("not counted as dropped", 0, publisher.getDropped());
+    }
+
+    public void testBufferDropsNewStepsWhenFull ()
+    {
+        StepPublisher publisher = new StepPublisher(DIRECT);
+        Recorder recorder = new Recorder(0);
+        publisher.subscribe(recorder, StepPublisher.Policy.BUFFER, 3);
+        offer(publisher, new ParticleStore(10), 0, 10);
+        assertEquals("dropped", 7, publisher.getDropped());
+        recorder.subscription.request(Long.MAX_VALUE);
+        assertEquals("buffered events", 3, recorder.received.get());
+        assertEquals("oldest steps kept", 2, recorder.lastStep);
+    }
+
+    public void testCancelStopsDeliveries ()
+    {
+        StepPublisher publisher = new StepPublisher(DIRECT);
+        ParticleStore store = new ParticleStore(10);
+        Recorder recorder = new Recorder(0);
+        publisher.subscribe(recorder, StepPublisher.Policy.BUFFER, 8);
+        offer(publisher, store, 0, 3);
+        recorder.subscription.cancel();
+        recorder.subscription.request(10);
+        offer(publisher, store, 3, 3);
+        publisher.close();
+        assertEquals("events", 0, recorder.received.get());
+        assertEquals("completions", 0, recorder.completions.get());
+        assertTrue("still subscribed", !publisher.hasSubscribers());
+    }
+
+    public void testNonPositiveRequestFails ()
+    {
+        StepPublisher publisher = new StepPublisher(DIRECT);
+        Recorder recorder = new Recorder(0);
+        publisher.subscribe(recorder);
+        recorder.subscription.request(0);
+        assertTrue("no error", recorder.error instanceof IllegalArgumentException);
+        assertTrue("still subscribed", !publisher.hasSubscribers());
+    }
+
+    public void testSteadyOffersDoNotAllocate ()
+    {
+        ParticleStore store = new ParticleStore(10000);
+        StepPublisher publisher = new StepPublisher(DIRECT);
+        Recorder buffered = new Recorder(Long.MAX_VALUE);
+        Recorder latest = new Recorder(Long.MAX_VALUE);
+        publisher.subscribe(buffered, StepPublisher.Policy.BUFFER, 4);
+        publisher.subscribe(latest);
+        offer(publisher, store, 0, 1000);
+        long shortBatch = allocatedBytes(publisher, store, 10);
+        long longBatch = allocatedBytes(publisher, store, 1000);
+        assertEquals("bytes of 1000 offers less those of 10", 0, longBatch - shortBatch);
+        assertEquals("buffered events", buffered.received.get(), latest.received.get());
+        assertEquals("last step", publisher.getPublished() - 1, buffered.lastStep);
+    }
+
+    private static void offer (StepPublisher publisher, ParticleStore store, long first, int steps)
+    {
+        for (long step = first; step < first + steps; step++)
+        {
+            publisher.offer(step, step * 0.01, 0.01, store, null);
+        }
+    }
+
+    /* Fewest bytes allocated by this thread while offering a batch, as in AllocationBenchmark */
+    private static long allocatedBytes (StepPublisher publisher, ParticleStore store, int steps)
+    {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        long min = Long.MAX_VALUE;
+        for (int r = 0; r < 5; r++)
+        {
+            long before = bean.getThreadAllocatedBytes(id);
+            offer(publisher, store, publisher.getPublished(), steps);
+            min = Math.min(min, bean.getThreadAllocatedBytes(id) - before);
+        }
+        return min;
+    }
+
+    /* Requests a number of events up front and records what it receives */
+    static class Recorder implements Flow.Subscriber<StepEvent>
+    {
+        final long initialRequest;
+        final CountDownLatch completed = new CountDownLatch(1);
+        final AtomicInteger completions = new AtomicInteger();
+        final AtomicInteger received = new AtomicInteger();
+        volatile Flow.Subscription subscription;
+        volatile long lastStep = -1;
+        volatile Throwable error;
+
+        Recorder (long initialRequest)
+        {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe (Flow.Subscription subscription)
+        {
+            this.subscription = subscription;
+            if (initialRequest > 0)
+            {
+                subscription.request(initialRequest);
+            }
+        }
+
+        @Override
+        public void onNext (StepEvent event)
+        {
+            lastStep = event.getStep();
+            received.incrementAndGet();
+        }
+
+        @Override
+        public void onError (Throwable error)
+        {
+            this.error = error;
+            completed.countDown();
+        }
+
+        @Override
+        public void onComplete ()
+        {
+            completions.incrementAndGet();
+            completed.countDown();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package moleculardynamics.placement;
+
+import static moleculardynamics.Assert.assertThrows;
+import static moleculardynamics.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import moleculardynamics.Assert;
+
+
+/**
+ * Tests of the initial placements: the particles stay in the box, no two
+ * are closer than the distance a placement guarantees, and a seed gives
+ * the same positions
+ */
+public class PlacementTest
+{
+    private static final String[] NAMES = { "square", "hex", "jittered", "poisson", "random" };
+
+
+    public void testSeparationAndBounds ()
+    {
+        for (String name : NAMES)
+        {
+            Placement placement = Placements.create(name, 0.5);
+            for (int count : new int[] { 1, 2, 7, 100, 1000 })
+            {
+                double boxWidth = Math.sqrt(count / 0.4);
+                double[] x = new double[count];
+                double[] y = new double[count];
+                double separation = placement.place(x, y, count, boxWidth, new SplittableRandom(count));
+                check(name + " " + count, x, y, count, boxWidth, separation);
+                if (!name.equals("random"))
+                {
+                    assertTrue(name + " below the minimum separation", count == 1 || separation >= 0.5);
+                }
+            }
+        }
+    }
+
+    public void testPoissonCornerCells ()
+    {
+        /* Closest pair 2.33 for a radius of 2.58 when the corner cells were skipped */
+        double[] x = new double[9];
+        double[] y = new double[9];
+        double radius = new PoissonDiskPlacement(0.1).place(x, y, 9, 10, new SplittableRandom(98));
+        check("poisson 9", x, y, 9, 10, radius);
+    }
+
+    public void testPoissonManySeeds ()
+    {
+        PoissonDiskPlacement placement = new PoissonDiskPlacement(0.1);
+        for (int count = 2; count < 40; count++)
+        {
+            for (int seed = 0; seed < 20; seed++)
+            {
+                double boxWidth = 3 + count * 0.37 + seed % 7;
+                double[] x = new double[count];
+                double[] y = new double[count];
+                double radius = placement.place(x, y, count, boxWidth, new SplittableRandom(seed));
+                check("poisson " + count + " seed " + seed, x, y, count, boxWidth, radius);
+            }
+        }
+    }
+
+    public void testSameSeedSamePositions ()
+    {
+        for (String name : NAMES)
+        {
+            Placement placement = Placements.create(name, 0.5);
+            double[] x1 = new double[5000], y1 = new double[5000], x2 = new double[5000], y2 = new double[5000];
+            placement.place(x1, y1, 5000, 120, new SplittableRandom(7));
+            placement.place(x2, y2, 5000, 120, new SplittableRandom(7));
+            assertTrue(name + " x differ", Arrays.equals(x1, x2));
+            assertTrue(name + " y differ", Arrays.equals(y1, y2));
+        }
+    }
+
+    public void testTooDense ()
+    {
+        for (final String name : new String[] { "square", "hex", "poisson" })
+        {
+            assertThrows(IllegalArgumentException.class, new Assert.Code() {
+                public void run ()
+                {
+                    Placements.create(name, 1).place(new double[100], new double[100], 100, 5, new SplittableRandom(1));
+                }
+            });
+        }
+    }
+
+    /* Every particle in the box and no pair closer than the separation, by brute force */
+    private static void check (String name, double[] x, double[] y, int count, double boxWidth, double separation)
+    {
+        double closest = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < count; i++)
+        {
+            assertTrue(name + " outside the box", x[i] >= 0 && x[i] <= boxWidth && y[i] >= 0 && y[i] <= boxWidth);
+            for (int j = i + 1; j < count; j++)
+            {
+                closest = Math.min(closest, Math.hypot(x[i] - x[j], y[i] - y[j]));
+            }
+        }
+        if (count > 1)
+        {
+            assertTrue(name + " closest pair " + closest + " below " + separation, closest >= separation * (1 - 1e-12));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package moleculardynamics.potential;
+
+import static moleculardynamics.Assert.assertEquals;
+import static moleculardynamics.Assert.assertTrue;
+
+
+/**
+ * Tests of the pair potentials: known values of the Lennard-Jones family,
+ * forces consistent with the energies, and tables close to the exact
+ * potentials
+ */
+public class PotentialTest
+{
+    private static final String[] NAMES = { "lj", "wca", "morse", "soft" };
+
+
+    public void testLennardJonesValues ()
+    {
+        LennardJones lennardJones = new LennardJones(1, 2);
+        assertEquals("energy at sigma", 0, lennardJones.energy(1), 1e-12);
+        double minimum = Math.pow(2, 1.0 / 3);
+        assertEquals("energy at the minimum", -2, lennardJones.energy(minimum), 1e-12);
+        assertEquals("force at the minimum", 0, lennardJones.forceOverDistance(minimum), 1e-12);
+        assertTrue("repulsive inside the minimum", lennardJones.forceOverDistance(0.9) > 0);
+        assertTrue("attractive outside the minimum", lennardJones.forceOverDistance(2) < 0);
+    }
+
+    public void testWeeksChandlerAndersen ()
+    {
+        WeeksChandlerAndersen wca = new WeeksChandlerAndersen(1, 2);
+        double minimum = Math.pow(2, 1.0 / 3);
+        assertEquals("energy at the minimum", 0, wca.energy(minimum * 0.999999999), 1e-6);
+        assertEquals("no energy beyond", 0, wca.energy(minimum * 1.01), 0);
+        assertEquals("no force beyond", 0, wca.forceOverDistance(minimum * 1.01), 0);
+        assertEquals("shifted energy at sigma", 2, wca.energy(1), 1e-12);
+    }
+
+    public void testForceIsMinusEnergyDerivative ()
+    {
+        for (String name : NAMES)
+        {
+            PairPotential potential = Potentials.exact(name, 1, 1);
+            for (double r = 0.9; r < 2.5; r += 0.05)
+            {
+                if (name.equals("wca") && Math.abs(r - Math.pow(2, 1.0 / 6)) < 0.01)
+                {
+                    /* The kink at the cutoff of the repulsion */
+                    continue;
+                }
+                double h = 1e-6;
+                double derivative = (potential.energy((r + h) * (r + h)) - potential.energy((r - h) * (r - h))) / (2 * h);
+                double force = potential.forceOverDistance(r * r) * r;
+                assertEquals(name + " force at " + r, -derivative, force, 1e-5 * Math.max(1, Math.abs(force)));
+            }
+        }
+    }
+
+    public void testTablesMatchExact ()
+    {
+        for (String name : NAMES)
+        {
+            PairPotential exact = Potentials.exact(name, 1, 1);
+            TabulatedPotential linear = new TabulatedPotential(exact, 0.8, 3, 4096, TabulatedPotential.Interpolation.LINEAR);
+            TabulatedPotential cubic = new TabulatedPotential(exact, 0.8, 3, 4096, TabulatedPotential.Interpolation.CUBIC);
+            double[] linearError = linear.accuracy(0.9, 10000);
+            double[] cubicError = cubic.accuracy(0.9, 10000);
+            assertTrue(name + " linear force error " + linearError[0], linearError[0] < 1e-3);
+            /* The cubic stencil straddles the kink of the shifted WCA repulsion */
+            assertTrue(name + " cubic force error " + cubicError[0], cubicError[0] < 1e-4);
+            assertTrue(name + " cubic energy error " + cubicError[1], cubicError[1] < 1e-4);
+            assertEquals(name + " exact below the table", exact.energy(0.5), cubic.energy(0.5), 0);
+        }
+    }
+}
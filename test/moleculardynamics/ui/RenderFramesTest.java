@@ -0,0 +1,45 @@
+package moleculardynamics.ui;
+
+import static moleculardynamics.Assert.assertEquals;
+import static moleculardynamics.Assert.assertTrue;
+
+import moleculardynamics.physics.ParticleStore;
+
+
+/**
+ * Tests of RenderFrames: the UI always takes the latest published step,
+ * even when it did not take the previous one, and keeps it until it asks
+ * again
+ */
+public class RenderFramesTest
+{
+    public void testLatestStepReplacesUntakenFrame ()
+    {
+        ParticleStore store = new ParticleStore(4);
+        RenderFrames frames = new RenderFrames(4);
+        for (long step = 1; step <= 3; step++)
+        {
+            store.getX()[0] = step;
+            frames.publish(step, step * 0.5, store);
+        }
+        RenderFrame frame = frames.latest();
+        assertEquals("step", 3, frame.getStep());
+        assertEquals("time", 1.5, frame.getTime(), 0);
+        assertEquals("x", 3, frame.getPositions()[0], 0);
+        assertTrue("changed without a new step", frames.latest() == frame);
+    }
+
+    public void testPaintedFrameIsNotWritten ()
+    {
+        ParticleStore store = new ParticleStore(4);
+        RenderFrames frames = new RenderFrames(4);
+        frames.publish(1, 0.5, store);
+        RenderFrame painted = frames.latest();
+        for (long step = 2; step <= 6; step++)
+        {
+            frames.publish(step, step * 0.5, store);
+            assertEquals("painted frame written at step " + step, 1, painted.getStep());
+        }
+        assertEquals("latest", 6, frames.latest().getStep());
+    }
+}